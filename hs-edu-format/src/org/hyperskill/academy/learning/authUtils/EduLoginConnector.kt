@@ -1,7 +1,6 @@
 package org.hyperskill.academy.learning.authUtils
 
 import com.fasterxml.jackson.databind.ObjectMapper
-import okhttp3.ConnectionPool
 import okhttp3.Interceptor
 import org.hyperskill.academy.learning.courseFormat.EduFormatNames
 import org.hyperskill.academy.learning.courseFormat.EduFormatNames.CODE_ARGUMENT
@@ -32,8 +31,6 @@ abstract class EduLoginConnector<UserAccount : Account<*>, SpecificUserInfo : Us
   protected abstract val platformName: String
     @NonNls get
 
-  protected val connectionPool: ConnectionPool = ConnectionPool()
-
   protected val converterFactory: JacksonConverterFactory by lazy {
     JacksonConverterFactory.create(objectMapper)
   }
@@ -61,7 +58,7 @@ abstract class EduLoginConnector<UserAccount : Account<*>, SpecificUserInfo : Us
   abstract fun getCurrentUserInfo(): SpecificUserInfo?
 
   protected fun getEduOAuthEndpoints(): EduOAuthEndpoints =
-    createRetrofitBuilder(baseUrl.withTrailingSlash(), connectionPool)
+    createRetrofitBuilder(baseUrl.withTrailingSlash())
       .addConverterFactory(converterFactory)
       .build()
       .create(EduOAuthEndpoints::class.java)
@@ -79,7 +76,7 @@ abstract class EduLoginConnector<UserAccount : Account<*>, SpecificUserInfo : Us
 
     val freshAccessToken: String? = getFreshAccessToken(account, accessToken)
 
-    return createRetrofitBuilder(baseUrl.withTrailingSlash(), connectionPool, freshAccessToken, customInterceptor = requestInterceptor)
+    return createRetrofitBuilder(baseUrl.withTrailingSlash(), freshAccessToken, customInterceptor = requestInterceptor)
       .addConverterFactory(converterFactory)
       .build()
       .create(Endpoints::class.java)
@@ -0,0 +1,52 @@
+package org.hyperskill.academy.learning.network
+
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+
+/**
+ * Application interceptor limiting the number of requests to the same host executed at the same time.
+ *
+ * [okhttp3.Dispatcher] limits only asynchronous calls, but Retrofit calls are executed synchronously in the calling threads,
+ * so the limit is applied here. A request waits for a free slot of its host before it's sent,
+ * and the slot is released when the response headers are received.
+ */
+class HostConcurrencyLimiter(private val maxConcurrentRequests: (host: String) -> Int) : Interceptor {
+  private val semaphores = ConcurrentHashMap<String, Semaphore>()
+
+  override fun intercept(chain: Interceptor.Chain): Response {
+    val request = chain.request()
+    val semaphore = semaphores.computeIfAbsent(request.url.host) { host ->
+      Semaphore(maxConcurrentRequests(host).coerceAtLeast(1), true)
+    }
+    try {
+      semaphore.acquire()
+    }
+    catch (e: InterruptedException) {
+      Thread.currentThread().interrupt()
+      throw InterruptedIOException("Interrupted while waiting for a request to ${request.url.host}").apply { initCause(e) }
+    }
+    try {
+      return chain.proceed(request)
+    }
+    finally {
+      semaphore.release()
+    }
+  }
+}
+
+/**
+ * Parses limits per host or per endpoint in the `key=limit,key=limit` format, where `*` stands for all other keys.
+ * Invalid entries are ignored.
+ */
+fun parseLimits(value: String, defaultLimit: Int): (key: String) -> Int {
+  val limits = value.split(',').mapNotNull { entry ->
+    val key = entry.substringBefore('=', "").trim()
+    val limit = entry.substringAfter('=', "").trim().toIntOrNull()
+    if (key.isEmpty() || limit == null || limit <= 0) null else key to limit
+  }.toMap()
+  val otherKeysLimit = limits["*"] ?: defaultLimit
+  return { key -> limits[key] ?: otherKeysLimit }
+}
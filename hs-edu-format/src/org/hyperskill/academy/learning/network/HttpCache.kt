@@ -0,0 +1,50 @@
+package org.hyperskill.academy.learning.network
+
+import okhttp3.Interceptor
+import okhttp3.Response
+
+/**
+ * Header for Retrofit endpoints whose responses must never be stored in the HTTP cache,
+ * e.g. authenticated per-user data like submissions or attempts that change too often to be worth caching.
+ *
+ * Usage: `@Headers(NO_HTTP_CACHE)`
+ */
+const val NO_HTTP_CACHE: String = "Cache-Control: no-store"
+
+private const val CACHE_CONTROL = "Cache-Control"
+private const val REVALIDATE = "no-cache"
+private const val VARY = "Vary"
+private const val AUTHORIZATION = "Authorization"
+
+/**
+ * Network interceptor that makes every cached GET response require revalidation before it's used.
+ *
+ * The server responses may be stored for a long time in the HTTP cache, but the stored response is returned
+ * only after the server confirms with `304 Not Modified` that it's still valid,
+ * so a conditional request with `If-None-Match` or `If-Modified-Since` is sent instead of downloading the whole response again.
+ * Responses without `ETag` or `Last-Modified` headers can't be revalidated, so they are always downloaded.
+ *
+ * The HTTP cache is shared by all the accounts, so the responses vary by the `Authorization` header:
+ * a response stored for one account is never returned for another account or for anonymous requests.
+ *
+ * Responses to requests with `Cache-Control: no-store` (see [NO_HTTP_CACHE]) are not touched and are never stored.
+ */
+class HttpCacheRevalidationInterceptor : Interceptor {
+  override fun intercept(chain: Interceptor.Chain): Response {
+    val request = chain.request()
+    val response = chain.proceed(request)
+    if (request.method != "GET" || request.cacheControl.noStore || response.cacheControl.noStore) return response
+
+    return response.newBuilder()
+      .removeHeader("Pragma")
+      .header(CACHE_CONTROL, REVALIDATE)
+      .header(VARY, varyByAuthorization(response.headers(VARY)))
+      .build()
+  }
+
+  private fun varyByAuthorization(vary: List<String>): String {
+    val varyingHeaders = vary.flatMap { it.split(",") }.map { it.trim() }.filter { it.isNotEmpty() }
+    if (varyingHeaders.any { it.equals(AUTHORIZATION, ignoreCase = true) }) return varyingHeaders.joinToString(", ")
+    return (varyingHeaders + AUTHORIZATION).joinToString(", ")
+  }
+}
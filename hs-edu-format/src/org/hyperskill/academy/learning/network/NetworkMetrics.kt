@@ -0,0 +1,227 @@
+package org.hyperskill.academy.learning.network
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Collects latencies, payload sizes, status codes and retries of HTTP requests per endpoint.
+ *
+ * Endpoints are identified by the request method, the host and the templated path, e.g. `GET hyperskill.org/api/steps/{id}`,
+ * see [NetworkMetricsInterceptor.endpointName].
+ * Requests are recorded by [NetworkMetricsInterceptor], which is installed in [sharedOkHttpClient],
+ * so all the clients created with [createRetrofitBuilder] are measured.
+ */
+class NetworkMetrics {
+  private val endpoints = ConcurrentHashMap<String, EndpointStatistics>()
+  private val circuitOpenings = ConcurrentHashMap<String, AtomicLong>()
+
+  /**
+   * Records a request which got a response with the status [code].
+   * [nanos] is the time to receive the response headers, the response body may be read later.
+   */
+  fun record(endpoint: String, nanos: Long, code: Int, requestBytes: Long, responseBytes: Long, retries: Int) {
+    statistics(endpoint).record(nanos, code, requestBytes, responseBytes, retries)
+  }
+
+  /**
+   * Records a request that failed without a response, e.g. because of a timeout or a broken connection
+   */
+  fun recordFailure(endpoint: String, nanos: Long, requestBytes: Long, retries: Int, isTimeout: Boolean = false) {
+    val statistics = statistics(endpoint)
+    statistics.record(nanos, FAILED_REQUEST_CODE, requestBytes, 0, retries)
+    if (isTimeout) {
+      statistics.timeouts.incrementAndGet()
+    }
+  }
+
+  /**
+   * Records a retry of the whole call made above the HTTP client, e.g. with a backoff after a server error
+   */
+  fun recordRetry(endpoint: String) {
+    statistics(endpoint).retries.incrementAndGet()
+  }
+
+  /**
+   * Records a request that wasn't sent because the circuit of its endpoint is open, see [ResilienceInterceptor]
+   */
+  fun recordRejection(endpoint: String) {
+    statistics(endpoint).rejections.incrementAndGet()
+  }
+
+  fun recordCircuitOpened(endpoint: String) {
+    circuitOpenings.computeIfAbsent(endpoint) { AtomicLong() }.incrementAndGet()
+  }
+
+  /**
+   * How many times the circuit of every endpoint was opened after repeated failures
+   */
+  fun circuitOpenings(): Map<String, Long> =
+    circuitOpenings.entries.associate { (endpoint, counter) -> endpoint to counter.get() }.toSortedMap()
+
+  fun reset() {
+    endpoints.clear()
+    circuitOpenings.clear()
+  }
+
+  fun snapshot(): List<EndpointMetrics> = endpoints.entries
+    .map { (endpoint, statistics) -> statistics.snapshot(endpoint) }
+    .sortedBy { it.endpoint }
+
+  /**
+   * Human-readable dump of all the collected metrics, one line per endpoint
+   */
+  fun dump(): String = buildString {
+    appendLine("Network metrics:")
+    val snapshot = snapshot()
+    if (snapshot.isEmpty()) {
+      appendLine("  no requests recorded")
+    }
+    for (metrics in snapshot) {
+      append("  ${metrics.endpoint}: ")
+      append("count=${metrics.count} failures=${metrics.failures} timeouts=${metrics.timeouts} ")
+      append("retries=${metrics.retries} rejections=${metrics.rejections} ")
+      append("avg=${metrics.averageMillis}ms p50=${metrics.p50Millis}ms p95=${metrics.p95Millis}ms max=${metrics.maxMillis}ms ")
+      append("sent=${metrics.requestBytes} received=${metrics.responseBytes} ")
+      appendLine("statuses=${metrics.statusCodes} histogram=${metrics.latencyHistogram}")
+    }
+    val circuitOpenings = circuitOpenings()
+    if (circuitOpenings.isNotEmpty()) {
+      appendLine("  circuits opened: $circuitOpenings")
+    }
+  }
+
+  /**
+   * Structured dump of all the collected metrics in JSON
+   */
+  fun dumpJson(): String = JSON_WRITER.writeValueAsString(mapOf("endpoints" to snapshot(), "circuitOpenings" to circuitOpenings()))
+
+  private fun statistics(endpoint: String): EndpointStatistics = endpoints.computeIfAbsent(endpoint) { EndpointStatistics() }
+
+  /**
+   * Latency histogram with exponential buckets: the bucket `i` counts requests that took less than `2^i` milliseconds,
+   * the last bucket counts all the longer requests.
+   */
+  private class EndpointStatistics {
+    private val count = AtomicLong()
+    private val failures = AtomicLong()
+    val timeouts = AtomicLong()
+    val retries = AtomicLong()
+    val rejections = AtomicLong()
+    private val totalNanos = AtomicLong()
+    private val maxNanos = AtomicLong()
+    private val requestBytes = AtomicLong()
+    private val responseBytes = AtomicLong()
+    private val buckets = AtomicLongArray(BUCKETS_COUNT)
+    private val statusCodes = ConcurrentHashMap<Int, AtomicLong>()
+
+    fun record(nanos: Long, code: Int, requestBytes: Long, responseBytes: Long, retries: Int) {
+      count.incrementAndGet()
+      if (code == FAILED_REQUEST_CODE || code >= 500) {
+        failures.incrementAndGet()
+      }
+      this.retries.addAndGet(retries.toLong())
+      totalNanos.addAndGet(nanos)
+      maxNanos.accumulateAndGet(nanos, ::maxOf)
+      this.requestBytes.addAndGet(requestBytes)
+      this.responseBytes.addAndGet(responseBytes)
+      buckets.incrementAndGet(bucketIndex(nanos))
+      statusCodes.computeIfAbsent(code) { AtomicLong() }.incrementAndGet()
+    }
+
+    fun snapshot(endpoint: String): EndpointMetrics {
+      val count = count.get()
+      val histogram = LinkedHashMap<String, Long>()
+      for (index in 0 until BUCKETS_COUNT) {
+        if (buckets[index] > 0) {
+          histogram[bucketName(index)] = buckets[index]
+        }
+      }
+      return EndpointMetrics(
+        endpoint = endpoint,
+        count = count,
+        failures = failures.get(),
+        timeouts = timeouts.get(),
+        retries = retries.get(),
+        rejections = rejections.get(),
+        averageMillis = if (count == 0L) 0 else TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / count),
+        p50Millis = percentileMillis(0.5),
+        p95Millis = percentileMillis(0.95),
+        maxMillis = TimeUnit.NANOSECONDS.toMillis(maxNanos.get()),
+        requestBytes = requestBytes.get(),
+        responseBytes = responseBytes.get(),
+        statusCodes = statusCodes.entries.associate { (code, counter) -> statusName(code) to counter.get() }.toSortedMap(),
+        latencyHistogram = histogram
+      )
+    }
+
+    /**
+     * Upper bound of the histogram bucket containing the percentile
+     */
+    private fun percentileMillis(percentile: Double): Long {
+      val total = (0 until BUCKETS_COUNT).sumOf { buckets[it] }
+      if (total == 0L) return 0
+      var accumulated = 0L
+      for (index in 0 until BUCKETS_COUNT) {
+        accumulated += buckets[index]
+        if (accumulated >= total * percentile) return 1L shl index
+      }
+      return 1L shl (BUCKETS_COUNT - 1)
+    }
+
+    companion object {
+      private const val BUCKETS_COUNT = 18
+
+      private fun bucketIndex(nanos: Long): Int {
+        val millis = TimeUnit.NANOSECONDS.toMillis(nanos)
+        val index = 64 - java.lang.Long.numberOfLeadingZeros(millis)
+        return index.coerceAtMost(BUCKETS_COUNT - 1)
+      }
+
+      private fun bucketName(index: Int): String =
+        if (index == BUCKETS_COUNT - 1) ">=${1L shl (index - 1)}ms" else "<${1L shl index}ms"
+
+      private fun statusName(code: Int): String = if (code == FAILED_REQUEST_CODE) "failed" else code.toString()
+    }
+  }
+
+  companion object {
+    private const val FAILED_REQUEST_CODE = -1
+
+    private val JSON_WRITER = ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writer()
+
+    /**
+     * Metrics of all the requests made by the clients derived from [sharedOkHttpClient]
+     */
+    val INSTANCE: NetworkMetrics = NetworkMetrics()
+  }
+}
+
+/**
+ * Metrics of a single endpoint at the moment of [NetworkMetrics.snapshot]
+ */
+class EndpointMetrics(
+  val endpoint: String,
+  val count: Long,
+  /**
+   * Requests failed without a response or with a server error
+   */
+  val failures: Long,
+  val timeouts: Long,
+  val retries: Long,
+  /**
+   * Requests failed fast without sending because the circuit of the endpoint was open
+   */
+  val rejections: Long,
+  val averageMillis: Long,
+  val p50Millis: Long,
+  val p95Millis: Long,
+  val maxMillis: Long,
+  val requestBytes: Long,
+  val responseBytes: Long,
+  val statusCodes: Map<String, Long>,
+  val latencyHistogram: Map<String, Long>
+)
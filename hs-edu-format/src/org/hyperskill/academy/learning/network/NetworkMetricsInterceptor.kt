@@ -0,0 +1,95 @@
+package org.hyperskill.academy.learning.network
+
+import okhttp3.Interceptor
+import okhttp3.Request
+import okhttp3.Response
+import retrofit2.Invocation
+import retrofit2.http.*
+import java.io.IOException
+import java.net.SocketTimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Application interceptor recording every request to [metrics].
+ *
+ * Retries made by OkHttp itself, e.g. after a broken connection, are counted by [networkAttemptsCounter],
+ * which must be installed as a network interceptor of the same client.
+ */
+class NetworkMetricsInterceptor(private val metrics: NetworkMetrics = NetworkMetrics.INSTANCE) : Interceptor {
+
+  override fun intercept(chain: Interceptor.Chain): Response {
+    val attempts = NetworkAttempts()
+    val request = chain.request().newBuilder().tag(NetworkAttempts::class.java, attempts).build()
+    val endpoint = endpointName(request)
+    val requestBytes = request.body?.contentLength()?.coerceAtLeast(0) ?: 0
+
+    val start = System.nanoTime()
+    val response = try {
+      chain.proceed(request)
+    }
+    catch (e: IOException) {
+      metrics.recordFailure(endpoint, System.nanoTime() - start, requestBytes, attempts.retries, e is SocketTimeoutException)
+      throw e
+    }
+    metrics.record(endpoint, System.nanoTime() - start, response.code, requestBytes, response.responseBytes(), attempts.retries)
+    return response
+  }
+
+  /**
+   * Declared size of the response body as it was transferred, before the transparent decompression
+   */
+  private fun Response.responseBytes(): Long {
+    val networkLength = networkResponse?.header("Content-Length")?.toLongOrNull()
+    return networkLength ?: body?.contentLength()?.coerceAtLeast(0) ?: 0
+  }
+
+  private class NetworkAttempts {
+    private val count = AtomicInteger()
+
+    fun increment() {
+      count.incrementAndGet()
+    }
+
+    // responses from the cache don't make network attempts at all
+    val retries: Int get() = (count.get() - 1).coerceAtLeast(0)
+  }
+
+  companion object {
+    private val ID_SEGMENT = Regex("/\\d+(?=/|$)")
+
+    /**
+     * Network interceptor counting attempts to send a request, see [NetworkMetricsInterceptor]
+     */
+    val networkAttemptsCounter: Interceptor = Interceptor { chain ->
+      chain.request().tag(NetworkAttempts::class.java)?.increment()
+      chain.proceed(chain.request())
+    }
+
+    /**
+     * Name of the endpoint of the [request] with the path template from the Retrofit annotation of the called method, if there is one,
+     * or with the numeric path segments replaced with `{id}`
+     */
+    fun endpointName(request: Request): String = "${request.method} ${request.url.host}/${pathTemplate(request)}"
+
+    /**
+     * Path of the [request] without the leading slash, templated as in [endpointName], e.g. `api/steps/{id}`
+     */
+    fun pathTemplate(request: Request): String {
+      val method = request.tag(Invocation::class.java)?.method()
+      val path = method?.annotations?.firstNotNullOfOrNull { it.pathTemplate()?.ifEmpty { null } }
+                 ?: request.url.encodedPath.replace(ID_SEGMENT, "/{id}")
+      return path.trimStart('/')
+    }
+
+    private fun Annotation.pathTemplate(): String? = when (this) {
+      is GET -> value
+      is POST -> value
+      is PUT -> value
+      is PATCH -> value
+      is DELETE -> value
+      is HEAD -> value
+      is HTTP -> path
+      else -> null
+    }
+  }
+}
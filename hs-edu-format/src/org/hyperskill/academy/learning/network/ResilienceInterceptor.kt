@@ -0,0 +1,170 @@
+package org.hyperskill.academy.learning.network
+
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+
+/**
+ * Settings of [ResilienceInterceptor]
+ *
+ * @param maxAttempts the maximum number of attempts to execute an idempotent request, 1 disables retries
+ * @param baseDelayMillis the upper bound of the delay before the first retry, it is doubled for every next retry
+ * @param maxDelayMillis the upper bound of the delay before any retry
+ * @param failureThreshold the number of consecutive failures of an endpoint after which its circuit is opened, 0 disables the circuit breaker
+ * @param openCircuitMillis how long requests to an endpoint with the open circuit fail fast before a trial request is sent
+ * @param timeoutSeconds connect, read and write timeouts by the path template of the endpoint, see [NetworkMetricsInterceptor.pathTemplate].
+ * 0 keeps the timeouts of the client
+ */
+class ResiliencePolicy(
+  val maxAttempts: Int = 3,
+  val baseDelayMillis: Long = 500,
+  val maxDelayMillis: Long = 8000,
+  val failureThreshold: Int = 5,
+  val openCircuitMillis: Long = 30_000,
+  val timeoutSeconds: (endpoint: String) -> Int = { 0 }
+) {
+  companion object {
+    val DISABLED = ResiliencePolicy(maxAttempts = 1, failureThreshold = 0)
+  }
+}
+
+/**
+ * Thrown instead of sending a request to an endpoint whose circuit is open after repeated failures
+ */
+class CircuitOpenException(endpoint: String) : IOException("Requests to $endpoint are suspended after repeated failures")
+
+/**
+ * Application interceptor making requests resilient to transient server and network failures:
+ * - idempotent requests failed with a connection error or with a `429`, `500`, `502`, `503` or `504` response are retried
+ *   after an exponential backoff with full jitter, or after the delay from the `Retry-After` header.
+ * - after [ResiliencePolicy.failureThreshold] consecutive failures of an idempotent endpoint, its circuit is opened,
+ *   and requests to the endpoint fail fast with [CircuitOpenException] for [ResiliencePolicy.openCircuitMillis].
+ *   Then a single trial request is sent, and the circuit is closed if it succeeds.
+ *   Circuits are kept per endpoint (see [NetworkMetricsInterceptor.endpointName]), so a failing endpoint doesn't suspend the whole host.
+ * - non-idempotent requests, e.g. submissions, are never retried or rejected, and they don't affect circuits.
+ * - timeouts are applied per endpoint.
+ *
+ * Retries, rejected requests and opened circuits are recorded to [metrics].
+ * The interceptor must be installed before [HostConcurrencyLimiter], so requests don't hold slots of their host during backoff.
+ */
+class ResilienceInterceptor(
+  private val policy: ResiliencePolicy,
+  private val metrics: NetworkMetrics = NetworkMetrics.INSTANCE,
+  private val currentTimeMillis: () -> Long = System::currentTimeMillis,
+  private val sleep: (Long) -> Unit = Thread::sleep,
+  private val jitter: (Long) -> Long = { bound -> ThreadLocalRandom.current().nextLong(bound + 1) }
+) : Interceptor {
+  private val circuits = ConcurrentHashMap<String, Circuit>()
+
+  override fun intercept(chain: Interceptor.Chain): Response {
+    val request = chain.request()
+    val endpoint = NetworkMetricsInterceptor.endpointName(request)
+    val isIdempotent = request.method in IDEMPOTENT_METHODS
+    val circuit = if (isIdempotent) circuits.computeIfAbsent(endpoint) { Circuit(it) } else null
+    val maxAttempts = if (isIdempotent) policy.maxAttempts.coerceAtLeast(1) else 1
+
+    val timeout = policy.timeoutSeconds(NetworkMetricsInterceptor.pathTemplate(request))
+    val timedChain = if (timeout > 0) {
+      chain.withConnectTimeout(timeout, TimeUnit.SECONDS)
+        .withReadTimeout(timeout, TimeUnit.SECONDS)
+        .withWriteTimeout(timeout, TimeUnit.SECONDS)
+    }
+    else {
+      chain
+    }
+
+    var attempt = 1
+    while (true) {
+      if (circuit != null && !circuit.tryAcquire()) {
+        metrics.recordRejection(endpoint)
+        throw CircuitOpenException(endpoint)
+      }
+      val response = try {
+        timedChain.proceed(request)
+      }
+      catch (e: IOException) {
+        if (chain.call().isCanceled()) {
+          circuit?.onCancel()
+          throw e
+        }
+        circuit?.onFailure()
+        if (attempt >= maxAttempts) throw e
+        null
+      }
+
+      if (response != null) {
+        if (response.code >= 500) circuit?.onFailure() else circuit?.onSuccess()
+        if (response.code !in RETRYABLE_CODES || attempt >= maxAttempts) return response
+      }
+      val retryAfterMillis = response?.header("Retry-After")?.toLongOrNull()?.let { TimeUnit.SECONDS.toMillis(it) }
+      response?.close()
+
+      backoff(attempt, retryAfterMillis)
+      metrics.recordRetry(endpoint)
+      attempt++
+    }
+  }
+
+  private fun backoff(attempt: Int, retryAfterMillis: Long?) {
+    val exponentialDelay = policy.baseDelayMillis shl (attempt - 1).coerceAtMost(MAX_BACKOFF_SHIFT)
+    val delay = (retryAfterMillis ?: jitter(exponentialDelay)).coerceIn(0, policy.maxDelayMillis)
+    try {
+      sleep(delay)
+    }
+    catch (e: InterruptedException) {
+      Thread.currentThread().interrupt()
+      throw InterruptedIOException("Interrupted while waiting to retry a request").apply { initCause(e) }
+    }
+  }
+
+  /**
+   * The circuit is closed while its endpoint has less than [ResiliencePolicy.failureThreshold] consecutive failures.
+   * Otherwise, it's open until [openUntil], and then it lets a single trial request through.
+   */
+  private inner class Circuit(private val endpoint: String) {
+    private var consecutiveFailures = 0
+    private var openUntil = 0L
+    private var isTrialRequestRunning = false
+
+    @Synchronized
+    fun tryAcquire(): Boolean {
+      if (policy.failureThreshold <= 0 || consecutiveFailures < policy.failureThreshold) return true
+      if (isTrialRequestRunning || currentTimeMillis() < openUntil) return false
+      isTrialRequestRunning = true
+      return true
+    }
+
+    @Synchronized
+    fun onSuccess() {
+      consecutiveFailures = 0
+      isTrialRequestRunning = false
+    }
+
+    @Synchronized
+    fun onFailure() {
+      if (policy.failureThreshold <= 0) return
+      val isTrialRequestFailed = isTrialRequestRunning
+      isTrialRequestRunning = false
+      consecutiveFailures++
+      if (consecutiveFailures == policy.failureThreshold || isTrialRequestFailed) {
+        openUntil = currentTimeMillis() + policy.openCircuitMillis
+        metrics.recordCircuitOpened(endpoint)
+      }
+    }
+
+    @Synchronized
+    fun onCancel() {
+      isTrialRequestRunning = false
+    }
+  }
+
+  companion object {
+    private val IDEMPOTENT_METHODS = setOf("GET", "HEAD")
+    private val RETRYABLE_CODES = setOf(429, 500, 502, 503, 504)
+    private const val MAX_BACKOFF_SHIFT = 20
+  }
+}
@@ -25,37 +25,59 @@ import java.util.concurrent.TimeUnit
 private val LOG = logger("org.hyperskill.academy.learning.RetrofitExt")
 const val USER_AGENT = "User-Agent"
 
+private const val MAX_CONCURRENT_REQUESTS = 64
+const val DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST = 8
+
 fun createRetrofitBuilder(
   baseUrl: String,
-  connectionPool: ConnectionPool,
   accessToken: String? = null,
   authHeaderName: String = "Authorization",
   authHeaderValue: String? = "Bearer",
   customInterceptor: Interceptor? = null
 ): Retrofit.Builder {
   return Retrofit.Builder()
-    .client(createOkHttpClient(baseUrl, connectionPool, accessToken, authHeaderName, authHeaderValue, customInterceptor))
+    .client(createOkHttpClient(baseUrl, accessToken, authHeaderName, authHeaderValue, customInterceptor))
     .baseUrl(baseUrl)
 }
 
+/**
+ * Process-wide client all the clients created with [createRetrofitBuilder] are derived from with [OkHttpClient.newBuilder].
+ *
+ * So they share the dispatcher with its thread pool and the connection pool,
+ * and parallel requests to the same host are multiplexed over a single HTTP/2 connection when the server supports it.
+ * Failed requests are retried and hosts failing repeatedly are cut off according to [RetrofitHelper.resiliencePolicy].
+ * The number of concurrent requests to a host is limited by [RetrofitHelper.getMaxConcurrentRequests].
+ * All requests are recorded to [NetworkMetrics.INSTANCE], every retry is recorded separately.
+ */
+val sharedOkHttpClient: OkHttpClient by lazy {
+  val helper = findService(RetrofitHelper::class.java)
+  val dispatcher = Dispatcher()
+  dispatcher.maxRequests = MAX_CONCURRENT_REQUESTS
+  dispatcher.maxRequestsPerHost = DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST
+
+  OkHttpClient.Builder()
+    .dispatcher(dispatcher)
+    .connectionPool(ConnectionPool())
+    .readTimeout(60, TimeUnit.SECONDS)
+    .connectTimeout(60, TimeUnit.SECONDS)
+    .addInterceptor(ResilienceInterceptor(helper.resiliencePolicy))
+    .addInterceptor(HostConcurrencyLimiter(helper::getMaxConcurrentRequests))
+    .addInterceptor(NetworkMetricsInterceptor())
+    .addNetworkInterceptor(NetworkMetricsInterceptor.networkAttemptsCounter)
+    .build()
+}
+
 private fun createOkHttpClient(
   baseUrl: String,
-  connectionPool: ConnectionPool,
   accessToken: String?,
   authHeaderName: String,
   authHeaderValue: String?,
   customInterceptor: Interceptor?
 ): OkHttpClient {
-  val dispatcher = Dispatcher()
-  dispatcher.maxRequests = 10
-
   val logger = HttpLoggingInterceptor { LOG.info(it) }
   logger.level = BASIC
 
-  val builder = OkHttpClient.Builder()
-    .connectionPool(connectionPool)
-    .readTimeout(60, TimeUnit.SECONDS)
-    .connectTimeout(60, TimeUnit.SECONDS)
+  val builder = sharedOkHttpClient.newBuilder()
     .addInterceptor { chain ->
       val builder = chain.request().newBuilder().addHeader(USER_AGENT, eduToolsUserAgent)
       if (accessToken != null) {
@@ -66,12 +88,18 @@ private fun createOkHttpClient(
       chain.proceed(newRequest)
     }
     .addInterceptor(logger)
-    .dispatcher(dispatcher)
 
   if (customInterceptor != null) {
     builder.addInterceptor(customInterceptor)
   }
 
+  val httpCache = findService(RetrofitHelper::class.java).httpCache
+  if (httpCache != null) {
+    builder
+      .cache(httpCache)
+      .addNetworkInterceptor(HttpCacheRevalidationInterceptor())
+  }
+
   builder.customizeClient(baseUrl)
 
   return builder.build()
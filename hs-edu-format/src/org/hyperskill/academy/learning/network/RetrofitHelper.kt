@@ -1,5 +1,6 @@
 package org.hyperskill.academy.learning.network
 
+import okhttp3.Cache
 import okhttp3.OkHttpClient
 import org.hyperskill.academy.learning.Result
 import retrofit2.Call
@@ -11,4 +12,21 @@ interface RetrofitHelper {
   fun customizeClient(builder: OkHttpClient.Builder, baseUrl: String): OkHttpClient.Builder
 
   val eduToolsUserAgent: String
-}
\ No newline at end of file
+
+  /**
+   * On-disk cache shared by all the clients created with [createRetrofitBuilder], `null` if responses should not be cached
+   */
+  val httpCache: Cache?
+    get() = null
+
+  /**
+   * Maximum number of requests to the [host] executed at the same time by all the clients derived from [sharedOkHttpClient]
+   */
+  fun getMaxConcurrentRequests(host: String): Int = DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST
+
+  /**
+   * Retries, circuit breaking and per-endpoint timeouts of the requests made by all the clients derived from [sharedOkHttpClient]
+   */
+  val resiliencePolicy: ResiliencePolicy
+    get() = ResiliencePolicy()
+}
@@ -1,21 +1,26 @@
 package org.hyperskill.academy.coursecreator.framework
 
 import com.intellij.util.io.DataInputOutputUtil
+import com.intellij.util.io.UnsyncByteArrayInputStream
+import com.intellij.util.io.UnsyncByteArrayOutputStream
 import org.hyperskill.academy.learning.framework.impl.FLTaskState
 import org.hyperskill.academy.learning.framework.impl.FrameworkStorageBase
 import java.io.DataInput
+import java.io.DataInputStream
 import java.io.DataOutput
+import java.io.DataOutputStream
 import java.io.IOException
 import java.nio.file.Path
 
 class CCFrameworkStorage(storagePath: Path) : FrameworkStorageBase(storagePath) {
   @Throws(IOException::class)
   fun updateState(record: Int, state: FLTaskState): Int {
-    return withWriteLock<Int, IOException> {
-      val id = if (record == -1) createNewRecord() else record
-      writeStream(id, true).use { state.write(it) }
-      id
-    }
+    val output = UnsyncByteArrayOutputStream()
+    DataOutputStream(output).use { state.write(it) }
+
+    val id = if (record == -1) createRecord() else record
+    writeRecord(id, output.toByteArray())
+    return id
   }
 
   @Throws(IOException::class)
@@ -24,9 +29,7 @@ class CCFrameworkStorage(storagePath: Path) : FrameworkStorageBase(storagePath)
       emptyMap()
     }
     else {
-      withReadLock<FLTaskState, IOException> {
-        readStream(record).use(::readState)
-      }
+      DataInputStream(UnsyncByteArrayInputStream(readRecord(record))).use(::readState)
     }
   }
 
@@ -50,7 +53,7 @@ class CCFrameworkStorage(storagePath: Path) : FrameworkStorageBase(storagePath)
     return state
   }
 
-  override fun migrateRecord(recordId: Int, currentVersion: Int, newVersion: Int) {
+  override fun convertRecord(bytes: ByteArray, currentVersion: Int, newVersion: Int): ByteArray {
     error("Could not migrate record from $currentVersion to $newVersion")
   }
 }
\ No newline at end of file
@@ -107,5 +107,19 @@ class EduDocumentListener private constructor(
         taskFile.isTrackChanges = isTrackChanges
       }
     }
+
+    /**
+     * Same as [modifyWithoutListener] for a single file, but suppresses tracking of changes in all the files of the [task]
+     */
+    fun modifyWithoutListener(task: Task, modification: () -> Unit) {
+      val trackedTaskFiles = task.taskFiles.values.filter { it.isTrackChanges }
+      trackedTaskFiles.forEach { it.isTrackChanges = false }
+      try {
+        modification()
+      }
+      finally {
+        trackedTaskFiles.forEach { it.isTrackChanges = true }
+      }
+    }
   }
 }
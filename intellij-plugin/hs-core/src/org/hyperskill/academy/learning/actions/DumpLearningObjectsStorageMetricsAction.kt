@@ -0,0 +1,28 @@
+package org.hyperskill.academy.learning.actions
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread
+import com.intellij.openapi.actionSystem.AnActionEvent
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.project.DumbAwareAction
+import com.intellij.openapi.ui.Messages
+import org.hyperskill.academy.learning.framework.impl.FrameworkUserChangesCache
+import org.hyperskill.academy.learning.messages.EduCoreBundle
+import org.hyperskill.academy.learning.storage.LearningObjectsStorageMetrics
+import org.hyperskill.academy.learning.storage.isLearningObjectsStorageMetricsEnabled
+
+class DumpLearningObjectsStorageMetricsAction : DumbAwareAction(EduCoreBundle.lazyMessage("action.dump.learning.objects.storage.metrics.title")) {
+
+  override fun actionPerformed(e: AnActionEvent) {
+    val project = e.project
+    val storageDump = LearningObjectsStorageMetrics.getInstance().dump()
+    val dump = if (project == null) storageDump else storageDump + FrameworkUserChangesCache.getInstance(project).dump()
+    logger<DumpLearningObjectsStorageMetricsAction>().info(dump)
+    Messages.showInfoMessage(project, dump, EduCoreBundle.message("action.dump.learning.objects.storage.metrics.title"))
+  }
+
+  override fun update(e: AnActionEvent) {
+    e.presentation.isEnabled = isLearningObjectsStorageMetricsEnabled()
+  }
+
+  override fun getActionUpdateThread() = ActionUpdateThread.BGT
+}
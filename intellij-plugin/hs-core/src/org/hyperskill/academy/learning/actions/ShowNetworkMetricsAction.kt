@@ -0,0 +1,99 @@
+package org.hyperskill.academy.learning.actions
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread
+import com.intellij.openapi.actionSystem.AnActionEvent
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.ide.CopyPasteManager
+import com.intellij.openapi.project.DumbAwareAction
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.ui.DialogWrapper
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.table.JBTable
+import com.intellij.util.ui.JBUI
+import org.hyperskill.academy.learning.messages.EduCoreBundle
+import org.hyperskill.academy.learning.network.NetworkMetrics
+import java.awt.datatransfer.StringSelection
+import java.awt.event.ActionEvent
+import javax.swing.AbstractAction
+import javax.swing.Action
+import javax.swing.JComponent
+import javax.swing.table.DefaultTableModel
+
+/**
+ * Shows latencies, payload sizes, status codes, retries and rejections of the requests to the Hyperskill servers per endpoint,
+ * and writes them to the IDE log
+ */
+class ShowNetworkMetricsAction : DumbAwareAction(EduCoreBundle.lazyMessage("action.show.network.metrics.title")) {
+
+  override fun actionPerformed(e: AnActionEvent) {
+    logger<ShowNetworkMetricsAction>().info(NetworkMetrics.INSTANCE.dump())
+    NetworkMetricsDialog(e.project).show()
+  }
+
+  override fun getActionUpdateThread() = ActionUpdateThread.BGT
+
+  private class NetworkMetricsDialog(project: Project?) : DialogWrapper(project, false) {
+    private val tableModel = object : DefaultTableModel(COLUMNS, 0) {
+      override fun isCellEditable(row: Int, column: Int): Boolean = false
+    }
+
+    private val copyJsonAction = object : AbstractAction(EduCoreBundle.message("action.show.network.metrics.copy.json")) {
+      override fun actionPerformed(e: ActionEvent) {
+        CopyPasteManager.getInstance().setContents(StringSelection(NetworkMetrics.INSTANCE.dumpJson()))
+      }
+    }
+
+    private val resetAction = object : AbstractAction(EduCoreBundle.message("action.show.network.metrics.reset")) {
+      override fun actionPerformed(e: ActionEvent) {
+        NetworkMetrics.INSTANCE.reset()
+        fillTable()
+      }
+    }
+
+    init {
+      title = EduCoreBundle.message("action.show.network.metrics.title")
+      setOKButtonText(EduCoreBundle.message("action.show.network.metrics.close"))
+      fillTable()
+      init()
+    }
+
+    override fun createCenterPanel(): JComponent {
+      val table = JBTable(tableModel)
+      table.autoCreateRowSorter = true
+      return JBScrollPane(table).apply { preferredSize = JBUI.size(1000, 400) }
+    }
+
+    override fun createActions(): Array<Action> = arrayOf(copyJsonAction, resetAction, okAction)
+
+    private fun fillTable() {
+      tableModel.rowCount = 0
+      for (metrics in NetworkMetrics.INSTANCE.snapshot()) {
+        tableModel.addRow(
+          arrayOf(
+            metrics.endpoint,
+            metrics.count,
+            metrics.failures,
+            metrics.timeouts,
+            metrics.retries,
+            metrics.rejections,
+            metrics.averageMillis,
+            metrics.p50Millis,
+            metrics.p95Millis,
+            metrics.maxMillis,
+            metrics.requestBytes,
+            metrics.responseBytes,
+            metrics.statusCodes.entries.joinToString { (status, count) -> "$status: $count" }
+          )
+        )
+      }
+    }
+
+    companion object {
+      @Suppress("HardCodedStringLiteral")
+      private val COLUMNS = arrayOf(
+        "Endpoint", "Count", "Failures", "Timeouts", "Retries", "Rejected",
+        "Avg, ms", "p50, ms", "p95, ms", "Max, ms", "Sent, bytes", "Received, bytes", "Statuses"
+      )
+    }
+  }
+}
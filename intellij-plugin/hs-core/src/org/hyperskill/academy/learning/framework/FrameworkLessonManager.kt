@@ -12,6 +12,11 @@ interface FrameworkLessonManager : EduTestAware {
   fun preparePrevTask(lesson: FrameworkLesson, taskDir: VirtualFile, showDialogIfConflict: Boolean)
 
   fun saveExternalChanges(task: Task, externalState: Map<String, String>)
+
+  /**
+   * Rebases the stored changes of the [task] onto the [newInitialState] of its files.
+   * Changes may be stored as deltas against the current initial files, so it must be called before the files of the task are replaced.
+   */
   fun updateUserChanges(task: Task, newInitialState: Map<String, String>)
 
   fun getChangesTimestamp(task: Task): Long
@@ -0,0 +1,138 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.openapi.util.text.StringUtil
+import com.intellij.util.io.DataInputOutputUtil
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.IOException
+import java.security.MessageDigest
+
+/**
+ * Encoding of [Change] texts in records of version 2 and later.
+ *
+ * A text is written either in full, or as a delta against the initial text of the same file in the task:
+ * the length of the common prefix, the length of the common suffix and the text between them.
+ * A delta also stores the SHA-256 digest of its initial text, so it is never applied to another text.
+ * Texts are written as length-prefixed UTF-8 bytes, so, unlike [DataOutput.writeUTF], they are not limited to 64 KB.
+ */
+internal object ChangeTextEncoding {
+  private const val FULL_TEXT: Int = 0
+
+  /**
+   * Deltas verified only by the length and [String.hashCode] of the initial text. They are not written anymore, but still can be read
+   */
+  private const val HASHED_DELTA: Int = 1
+  private const val DELTA: Int = 2
+
+  /**
+   * Deltas are written only if they save at least this number of characters
+   */
+  private const val MIN_DELTA_SAVING = 64
+
+  @Throws(IOException::class)
+  fun write(out: DataOutput, text: String, initialText: String?) {
+    val delta = initialText?.let { TextDelta.compute(it, text) }
+    if (delta == null || text.length - delta.insertedText.length < MIN_DELTA_SAVING) {
+      out.writeByte(FULL_TEXT)
+      writeString(out, text)
+      return
+    }
+
+    out.writeByte(DELTA)
+    DataInputOutputUtil.writeINT(out, delta.initialLength)
+    out.write(delta.initialDigest)
+    DataInputOutputUtil.writeINT(out, delta.prefixLength)
+    DataInputOutputUtil.writeINT(out, delta.suffixLength)
+    writeString(out, delta.insertedText)
+  }
+
+  /**
+   * @return the text, or `null` if it was written as a delta against an initial text that differs from the [initialText]
+   */
+  @Throws(IOException::class)
+  fun read(input: DataInput, initialText: String?): String? {
+    return when (val encoding = input.readByte().toInt()) {
+      FULL_TEXT -> readString(input)
+      HASHED_DELTA -> {
+        val initialLength = DataInputOutputUtil.readINT(input)
+        val initialHash = input.readInt()
+        val prefixLength = DataInputOutputUtil.readINT(input)
+        val suffixLength = DataInputOutputUtil.readINT(input)
+        val insertedText = readString(input)
+        val isComputedFor = initialText != null && initialText.length == initialLength && initialText.hashCode() == initialHash
+        // a colliding hash must not lead to an exception
+        if (!isComputedFor || prefixLength + suffixLength > initialLength) null
+        else TextDelta.apply(initialText!!, prefixLength, suffixLength, insertedText)
+      }
+
+      DELTA -> {
+        val initialLength = DataInputOutputUtil.readINT(input)
+        val initialDigest = ByteArray(TextDelta.DIGEST_SIZE).also { input.readFully(it) }
+        val delta = TextDelta(
+          initialLength = initialLength,
+          initialDigest = initialDigest,
+          prefixLength = DataInputOutputUtil.readINT(input),
+          suffixLength = DataInputOutputUtil.readINT(input),
+          insertedText = readString(input)
+        )
+        if (initialText == null || !delta.isComputedFor(initialText)) null else delta.applyTo(initialText)
+      }
+
+      else -> throw IOException("Unexpected change text encoding: $encoding")
+    }
+  }
+
+  @Throws(IOException::class)
+  private fun writeString(out: DataOutput, value: String) {
+    val bytes = value.toByteArray(Charsets.UTF_8)
+    DataInputOutputUtil.writeINT(out, bytes.size)
+    out.write(bytes)
+  }
+
+  @Throws(IOException::class)
+  private fun readString(input: DataInput): String {
+    val bytes = ByteArray(DataInputOutputUtil.readINT(input))
+    input.readFully(bytes)
+    return String(bytes, Charsets.UTF_8)
+  }
+}
+
+internal class TextDelta(
+  val initialLength: Int,
+  val initialDigest: ByteArray,
+  val prefixLength: Int,
+  val suffixLength: Int,
+  val insertedText: String
+) {
+
+  fun isComputedFor(initialText: String): Boolean =
+    initialText.length == initialLength && MessageDigest.isEqual(digest(initialText), initialDigest)
+
+  fun applyTo(initialText: String): String = apply(initialText, prefixLength, suffixLength, insertedText)
+
+  companion object {
+    fun compute(initialText: String, text: String): TextDelta {
+      var prefixLength = StringUtil.commonPrefixLength(initialText, text)
+      // the inserted text must not start or end in the middle of a surrogate pair, otherwise it can't be encoded in UTF-8
+      if (prefixLength > 0 && Character.isHighSurrogate(text[prefixLength - 1])) {
+        prefixLength--
+      }
+
+      val maxSuffixLength = minOf(initialText.length, text.length) - prefixLength
+      var suffixLength = minOf(StringUtil.commonSuffixLength(initialText, text), maxSuffixLength)
+      if (suffixLength > 0 && Character.isLowSurrogate(text[text.length - suffixLength])) {
+        suffixLength--
+      }
+
+      val insertedText = text.substring(prefixLength, text.length - suffixLength)
+      return TextDelta(initialText.length, digest(initialText), prefixLength, suffixLength, insertedText)
+    }
+
+    const val DIGEST_SIZE = 32
+
+    fun apply(initialText: String, prefixLength: Int, suffixLength: Int, insertedText: String): String =
+      initialText.substring(0, prefixLength) + insertedText + initialText.substring(initialText.length - suffixLength)
+
+    fun digest(text: String): ByteArray = MessageDigest.getInstance("SHA-256").digest(text.toByteArray(Charsets.UTF_8))
+  }
+}
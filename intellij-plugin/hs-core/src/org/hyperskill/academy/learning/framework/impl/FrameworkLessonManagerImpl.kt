@@ -1,13 +1,18 @@
 package org.hyperskill.academy.learning.framework.impl
 
 import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.progress.ProgressIndicator
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.ui.Messages
 import com.intellij.openapi.util.Disposer
 import com.intellij.openapi.util.io.FileUtil
 import com.intellij.openapi.vfs.VirtualFile
-import com.intellij.util.io.storage.AbstractStorage
+import com.intellij.platform.ide.progress.runWithModalProgressBlocking
+import com.intellij.util.concurrency.AppExecutorUtil
+import kotlinx.coroutines.future.await
 import org.hyperskill.academy.learning.EduUtilsKt.isStudentProject
 import org.hyperskill.academy.learning.courseDir
 import org.hyperskill.academy.learning.courseFormat.FrameworkLesson
@@ -16,7 +21,11 @@ import org.hyperskill.academy.learning.courseFormat.ext.shouldBePropagated
 import org.hyperskill.academy.learning.courseFormat.tasks.Task
 import org.hyperskill.academy.learning.framework.FrameworkLessonManager
 import org.hyperskill.academy.learning.framework.propagateFilesOnNavigation
+import org.hyperskill.academy.learning.isUnitTestMode
 import org.hyperskill.academy.learning.messages.EduCoreBundle
+import org.hyperskill.academy.learning.notification.EduNotificationManager
+import org.hyperskill.academy.learning.runInBackground
+import org.hyperskill.academy.learning.storage.LearningObjectsStorageManager
 import org.hyperskill.academy.learning.ui.getUIName
 import org.hyperskill.academy.learning.yaml.YamlFormatSynchronizer
 import org.jetbrains.annotations.TestOnly
@@ -24,6 +33,9 @@ import org.jetbrains.annotations.VisibleForTesting
 import java.io.IOException
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
 
 /**
  * Keeps list of [Change]s for each task. Change list is difference between initial task state and latest one.
@@ -33,7 +45,57 @@ import java.nio.file.Paths
  * It can be essential in large projects like Android applications where a lot of files are the same between two consecutive tasks
  */
 class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLessonManager, Disposable {
-  private var storage: FrameworkStorage = createStorage(project)
+  @Volatile
+  private var currentStorage: FrameworkStorage = FrameworkStorage(constructStoragePath(project))
+
+  @Volatile
+  private var isDisposed: Boolean = false
+
+  @Volatile
+  private var storageMigrationFailed: Boolean = false
+
+  private var storageMigration: CompletableFuture<*> = startStorageMigration()
+
+  /**
+   * The storage can be used only after it is migrated to [VERSION], so it waits for the migration if it's still in progress.
+   * On EDT, it waits under a modal progress, so that the UI isn't frozen.
+   *
+   * @throws IOException if the migration failed, the storage can't be used until it's migrated the next time the project is opened
+   */
+  private val storage: FrameworkStorage
+    @Throws(IOException::class)
+    get() {
+      val migration = storageMigration
+      if (!migration.isDone) {
+        if (ApplicationManager.getApplication().isDispatchThread) {
+          runWithModalProgressBlocking(project, EduCoreBundle.message("progress.title.migrating.framework.lesson.storage")) {
+            migration.await()
+          }
+        }
+        else {
+          ProgressIndicatorUtils.awaitWithCheckCanceled(migration)
+        }
+      }
+      if (storageMigrationFailed) throw IOException("Framework lesson storage isn't migrated to version $VERSION")
+      return currentStorage
+    }
+
+  private val taskFilesFingerprints = TaskFilesFingerprints()
+
+  private val userChangesCache: FrameworkUserChangesCache
+    get() = FrameworkUserChangesCache.getInstance(project)
+
+  private val prefetcher = FrameworkTaskStatePrefetcher(createPrefetchExecutor()) { task ->
+    // versions are taken before the texts, see [FrameworkUserChangesCache.getOrLoad]
+    val initialTextVersions = task.taskFiles.mapValues { (_, taskFile) -> taskFile.contents }
+    val initialFiles = task.allFiles
+    val userChanges = getUserChanges(task.record, { initialFiles[it] }, { initialTextVersions[it] })
+    reportUnresolvedChanges(task, userChanges)
+    StoredTaskState(initialFiles, userChanges)
+  }
+
+  // records whose unresolved changes the learner has already been notified about
+  private val reportedUnresolvedRecords: MutableSet<Int> = ConcurrentHashMap.newKeySet()
 
   override fun prepareNextTask(lesson: FrameworkLesson, taskDir: VirtualFile, showDialogIfConflict: Boolean) {
     applyTargetTaskChanges(lesson, 1, taskDir, showDialogIfConflict)
@@ -61,12 +123,15 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
     val changes = calculateChanges(propagatableFiles, externalPropagatableFiles)
     val currentRecord = task.record
     task.record = try {
-      storage.updateUserChanges(currentRecord, changes)
+      storage.updateUserChanges(currentRecord, changes, propagatableFiles)
     }
     catch (e: IOException) {
       LOG.error("Failed to save solution for task `${task.name}`", e)
       currentRecord
     }
+    finally {
+      invalidateRecord(currentRecord)
+    }
     YamlFormatSynchronizer.saveItem(task)
   }
 
@@ -78,11 +143,14 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
       "Only solutions of framework tasks can be saved"
     }
 
+    // initial files of the task are going to be changed
+    prefetcher.invalidateAll()
+
     val currentRecord = task.record
     if (currentRecord == -1) return
 
     val changes = try {
-      storage.getUserChanges(currentRecord)
+      readUserChanges(task)
     }
     catch (e: IOException) {
       LOG.error("Failed to get user changes for task `${task.name}`", e)
@@ -100,11 +168,14 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
     }
 
     try {
-      storage.updateUserChanges(currentRecord, UserChanges(newChanges))
+      storage.updateUserChanges(currentRecord, UserChanges(newChanges), newInitialState)
     }
     catch (e: IOException) {
       LOG.error("Failed to update user changes for task `${task.name}`", e)
     }
+    finally {
+      invalidateRecord(currentRecord)
+    }
   }
 
   override fun getChangesTimestamp(task: Task): Long {
@@ -115,7 +186,7 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
       "Changes timestamp makes sense only for framework tasks"
     }
 
-    return storage.getUserChanges(task.record).timestamp
+    return readUserChanges(task).timestamp
   }
 
   override fun getTaskState(lesson: FrameworkLesson, task: Task): Map<String, String> {
@@ -158,18 +229,22 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
     val currentRecord = currentTask.record
     val targetRecord = targetTask.record
 
-    val initialCurrentFiles = currentTask.allFiles
+    // States of the current and the target tasks are usually prefetched after the previous navigation
+    val currentStoredState = prefetcher.takeState(currentTask)
+    val targetStoredState = prefetcher.takeState(targetTask)
+
+    val initialCurrentFiles = currentStoredState?.initialFiles ?: currentTask.allFiles
 
     // 1. Get difference between initial state of current task and previous task state
     // and construct previous state of current task.
     // Previous state is needed to determine if a user made any new change
-    val previousCurrentUserChanges = getUserChangesFromStorage(currentTask)
+    val previousCurrentUserChanges = currentStoredState?.userChanges ?: getUserChangesFromStorage(currentTask)
     val previousCurrentState = HashMap(initialCurrentFiles).apply { previousCurrentUserChanges.apply(this) }
 
     // 2. Calculate difference between initial state of current task and current state on local FS.
     // Update change list for current task in [storage] to have ability to restore state of current task in future
     val (newCurrentRecord, currentUserChanges) = try {
-      updateUserChanges(currentRecord, getUserChangesFromFiles(initialCurrentFiles, taskDir))
+      updateUserChanges(currentRecord, getUserChangesFromFiles(initialCurrentFiles, taskDir), initialCurrentFiles)
     }
     catch (e: IOException) {
       LOG.error("Failed to save user changes for task `${currentTask.name}`", e)
@@ -181,11 +256,11 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
     YamlFormatSynchronizer.saveItem(currentTask)
 
     // 4. Get difference (change list) between initial and latest states of target task
-    val nextUserChanges = getUserChangesFromStorage(targetTask)
+    val nextUserChanges = targetStoredState?.userChanges ?: getUserChangesFromStorage(targetTask)
 
     // 5. Apply change lists to initial state to get latest states of current and target tasks
     val currentState = HashMap(initialCurrentFiles).apply { currentUserChanges.apply(this) }
-    val targetState = HashMap(targetTask.allFiles).apply { nextUserChanges.apply(this) }
+    val targetState = HashMap(targetStoredState?.initialFiles ?: targetTask.allFiles).apply { nextUserChanges.apply(this) }
 
     // 6. Calculate difference between latest states of current and target tasks
     // Note, there are special rules for hyperskill courses for now
@@ -205,6 +280,15 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
     // 7. Apply difference between latest states of current and target tasks on local FS
     changes.apply(project, taskDir, targetTask)
     YamlFormatSynchronizer.saveItem(targetTask)
+
+    // 8. Prepare states for the next navigation while the learner works on the target task
+    prefetchAdjacentTasks(lesson)
+  }
+
+  private fun prefetchAdjacentTasks(lesson: FrameworkLesson) {
+    val currentTaskIndex = lesson.currentTaskIndex
+    val tasks = listOf(currentTaskIndex - 1, currentTaskIndex, currentTaskIndex + 1).mapNotNull { lesson.taskList.getOrNull(it) }
+    prefetcher.prefetch(tasks)
   }
 
   /**
@@ -321,14 +405,14 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
   }
 
   private fun getUserChangesFromFiles(initialState: FLTaskState, taskDir: VirtualFile): UserChanges {
-    val currentState = getTaskStateFromFiles(initialState.keys, taskDir)
+    val currentState = taskFilesFingerprints.getTaskState(initialState, taskDir)
     return calculateChanges(initialState, currentState)
   }
 
   @Synchronized
-  private fun updateUserChanges(record: Int, changes: UserChanges): UpdatedUserChanges {
+  private fun updateUserChanges(record: Int, changes: UserChanges, initialState: FLTaskState): UpdatedUserChanges {
     return try {
-      val newRecord = storage.updateUserChanges(record, changes)
+      val newRecord = storage.updateUserChanges(record, changes, initialState)
       storage.force()
       UpdatedUserChanges(newRecord, changes)
     }
@@ -336,11 +420,15 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
       LOG.error("Failed to update user changes", e)
       UpdatedUserChanges(record, UserChanges.empty())
     }
+    finally {
+      // states that were being loaded during the write are discarded
+      invalidateRecord(record)
+    }
   }
 
   private fun getUserChangesFromStorage(task: Task): UserChanges {
     return try {
-      storage.getUserChanges(task.record)
+      readUserChanges(task)
     }
     catch (e: IOException) {
       LOG.error("Failed to get user changes for task `${task.name}`", e)
@@ -348,12 +436,129 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
     }
   }
 
+  /**
+   * Reads changes of the [task] from the storage.
+   * If the record of the task is damaged, the learner is notified, and the task is treated as not changed,
+   * so that the damaged record doesn't break navigation in the lesson.
+   */
+  @Throws(IOException::class)
+  private fun readUserChanges(task: Task): UserChanges {
+    return try {
+      getUserChanges(task.record, task.initialTexts(), task.initialTextVersions()).also { reportUnresolvedChanges(task, it) }
+    }
+    catch (e: CorruptedFrameworkRecordException) {
+      LOG.warn("User changes of task `${task.name}` are corrupted", e)
+      EduNotificationManager.showWarningNotification(
+        project,
+        EduCoreBundle.message("framework.lesson.corrupted.changes.title"),
+        EduCoreBundle.message("framework.lesson.corrupted.changes.content", task.getUIName(), task.name)
+      )
+      UserChanges.empty()
+    }
+  }
+
+  /**
+   * Changes stored as deltas can't be restored if the initial files of the task were replaced without [updateUserChanges].
+   * The learner is notified once per record, so such changes are never lost silently.
+   */
+  private fun reportUnresolvedChanges(task: Task, changes: UserChanges) {
+    if (changes.unresolvedPaths.isEmpty() || !reportedUnresolvedRecords.add(task.record)) return
+    LOG.warn("Changes of ${changes.unresolvedPaths} in task `${task.name}` can't be restored, their initial texts have changed")
+    EduNotificationManager.showWarningNotification(
+      project,
+      EduCoreBundle.message("framework.lesson.corrupted.changes.title"),
+      EduCoreBundle.message(
+        "framework.lesson.outdated.changes.content",
+        task.getUIName(),
+        task.name,
+        changes.unresolvedPaths.joinToString()
+      )
+    )
+  }
+
+  /**
+   * Migrates the storage in background, so that project opening doesn't wait for it.
+   * Empty storages and storages in tests are migrated synchronously.
+   */
+  private fun startStorageMigration(): CompletableFuture<*> {
+    val storage = currentStorage
+    val hasRecords = try {
+      storage.hasRecords()
+    }
+    catch (e: IOException) {
+      LOG.warn("Failed to check framework storage records", e)
+      true
+    }
+
+    if (isUnitTestMode || !hasRecords) {
+      migrateStorage(storage, null)
+      return CompletableFuture.completedFuture(null)
+    }
+
+    val migration = CompletableFuture<Unit>()
+    runInBackground(project, EduCoreBundle.message("progress.title.migrating.framework.lesson.storage"), canBeCancelled = false) { indicator ->
+      try {
+        migrateStorage(storage, indicator)
+      }
+      finally {
+        migration.complete(Unit)
+      }
+    }
+    return migration
+  }
+
+  private fun migrateStorage(storage: FrameworkStorage, indicator: ProgressIndicator?) {
+    try {
+      storage.migrate(VERSION, indicator)
+      storageMigrationFailed = false
+    }
+    catch (e: IOException) {
+      // the storage files are kept, so the migration is resumed from its journal the next time the project is opened
+      storageMigrationFailed = true
+      if (isDisposed) return
+      LOG.error("Failed to migrate framework lesson storage, it will be migrated again the next time the project is opened", e)
+    }
+  }
+
+  @Throws(IOException::class)
+  private fun getUserChanges(record: Int, initialText: (String) -> String?, initialTextVersion: (String) -> Any?): UserChanges {
+    return userChangesCache.getOrLoad(record, initialText, initialTextVersion) { trackingInitialText ->
+      storage.getUserChanges(record, trackingInitialText)
+    }
+  }
+
+  /**
+   * Must be called after every write of the [record] to the storage
+   */
+  private fun invalidateRecord(record: Int) {
+    userChangesCache.invalidate(record)
+    reportedUnresolvedRecords.remove(record)
+    prefetcher.invalidateRecord(record)
+  }
+
   override fun dispose() {
-    Disposer.dispose(storage)
+    isDisposed = true
+    taskFilesFingerprints.clear()
+    Disposer.dispose(currentStorage)
   }
 
   private val Task.allFiles: FLTaskState
-    get() = taskFiles.mapValues { it.value.contents.textualRepresentation }
+    get() = LearningObjectsStorageManager.getInstance(project).getTaskFilesTextualRepresentations(this)
+
+  /**
+   * Provides initial texts of the task files to read changes stored as deltas.
+   * The files are loaded only when the first delta is read.
+   */
+  private fun Task.initialTexts(): (String) -> String? {
+    val initialFiles by lazy { allFiles }
+    return { path -> initialFiles[path] }
+  }
+
+  /**
+   * Initial texts are the texts of the task files, and the contents of a task file is replaced whenever its text changes,
+   * so the contents object is a version of the initial text that is checked without loading the text
+   */
+  private fun Task.initialTextVersions(): (String) -> Any? = { path -> taskFiles[path]?.contents }
 
   private fun FLTaskState.splitByKey(predicate: (String) -> Boolean): Pair<FLTaskState, FLTaskState> {
     val positive = HashMap<String, String>()
@@ -373,37 +578,38 @@ class FrameworkLessonManagerImpl(private val project: Project) : FrameworkLesson
 
   @TestOnly
   override fun restoreState() {
-    if (storage.isDisposed) {
-      storage = createStorage(project)
+    if (currentStorage.isDisposed) {
+      currentStorage = FrameworkStorage(constructStoragePath(project))
+      userChangesCache.clear()
+      storageMigration = startStorageMigration()
     }
   }
 
   @TestOnly
   override fun cleanUpState() {
+    prefetcher.invalidateAll()
+    userChangesCache.clear()
+    taskFilesFingerprints.clear()
     storage.closeAndClean()
   }
 
   companion object {
     private val LOG: Logger = Logger.getInstance(FrameworkLessonManagerImpl::class.java)
 
-    const val VERSION: Int = 1
+    const val VERSION: Int = 3
 
     @VisibleForTesting
     fun constructStoragePath(project: Project): Path =
       Paths.get(FileUtil.join(project.basePath!!, Project.DIRECTORY_STORE_FOLDER, "frameworkLessonHistory", "storage"))
 
-    private fun createStorage(project: Project): FrameworkStorage {
-      val storageFilePath = constructStoragePath(project)
-      val storage = FrameworkStorage(storageFilePath)
-      return try {
-        storage.migrate(VERSION)
-        storage
-      }
-      catch (e: IOException) {
-        LOG.error(e)
-        AbstractStorage.deleteFiles(storageFilePath.toString())
-        FrameworkStorage(storageFilePath, VERSION)
-      }
+    /**
+     * States are prefetched synchronously in tests to keep them deterministic
+     */
+    private fun createPrefetchExecutor(): Executor = if (isUnitTestMode) {
+      Executor { it.run() }
+    }
+    else {
+      AppExecutorUtil.createBoundedApplicationPoolExecutor("Framework Lesson State Prefetch", 1)
     }
   }
 }
@@ -0,0 +1,135 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.util.io.DataInputOutputUtil
+import com.intellij.util.io.UnsyncByteArrayInputStream
+import com.intellij.util.io.UnsyncByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.util.zip.CRC32
+import java.util.zip.DataFormatException
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Thrown when a framework storage record is damaged: its checksum does not match, or it can't be decompressed
+ */
+class CorruptedFrameworkRecordException(message: String, cause: Throwable? = null) : IOException(message, cause)
+
+/**
+ * Since version 3, every framework storage record wraps its payload (serialized [UserChanges]) into an envelope:
+ *
+ * ```
+ * byte   codec: RAW or DEFLATE
+ * int    CRC32 of the uncompressed payload
+ * varint length of the uncompressed payload
+ * bytes  payload, compressed with the codec
+ * ```
+ */
+object FrameworkRecordEnvelope {
+  private const val RAW: Int = 0
+  private const val DEFLATE: Int = 1
+
+  /**
+   * Payloads smaller than this threshold are not compressed
+   */
+  private const val COMPRESSION_THRESHOLD = 256
+
+  /**
+   * Deflate can't compress data more than ~1032 times, so a larger length of a compressed payload means that the record is damaged
+   */
+  private const val MAX_DEFLATE_RATIO = 1032L
+
+  fun wrap(payload: ByteArray): ByteArray {
+    val compressed = if (payload.size >= COMPRESSION_THRESHOLD) deflate(payload) else null
+    val useCompression = compressed != null && compressed.size < payload.size
+
+    val output = UnsyncByteArrayOutputStream()
+    DataOutputStream(output).use { out ->
+      out.writeByte(if (useCompression) DEFLATE else RAW)
+      out.writeInt(checksum(payload))
+      DataInputOutputUtil.writeINT(out, payload.size)
+      out.write(if (useCompression) compressed!! else payload)
+    }
+    return output.toByteArray()
+  }
+
+  @Throws(CorruptedFrameworkRecordException::class)
+  fun unwrap(record: ByteArray): ByteArray {
+    val payload = try {
+      DataInputStream(UnsyncByteArrayInputStream(record)).use { input ->
+        val codec = input.readByte().toInt()
+        val expectedChecksum = input.readInt()
+        val length = DataInputOutputUtil.readINT(input)
+        val data = input.readAllBytes()
+        // the length is checked before a buffer of this size is allocated
+        val maxLength = if (codec == DEFLATE) data.size * MAX_DEFLATE_RATIO else data.size.toLong()
+        if (length < 0 || length > maxLength) {
+          throw CorruptedFrameworkRecordException("Invalid record length: $length")
+        }
+        val payload = when (codec) {
+          RAW -> data
+          DEFLATE -> inflate(data, length)
+          else -> throw CorruptedFrameworkRecordException("Unknown record codec: $codec")
+        }
+        if (payload.size != length || checksum(payload) != expectedChecksum) {
+          throw CorruptedFrameworkRecordException("Record checksum mismatch")
+        }
+        payload
+      }
+    }
+    catch (e: CorruptedFrameworkRecordException) {
+      throw e
+    }
+    catch (e: IOException) {
+      throw CorruptedFrameworkRecordException("Record is truncated", e)
+    }
+    catch (e: DataFormatException) {
+      throw CorruptedFrameworkRecordException("Record can't be decompressed", e)
+    }
+    return payload
+  }
+
+  private fun checksum(payload: ByteArray): Int {
+    val crc = CRC32()
+    crc.update(payload)
+    return crc.value.toInt()
+  }
+
+  private fun deflate(payload: ByteArray): ByteArray {
+    val deflater = Deflater(Deflater.BEST_SPEED)
+    try {
+      deflater.setInput(payload)
+      deflater.finish()
+      val output = UnsyncByteArrayOutputStream(payload.size / 2)
+      val buffer = ByteArray(8192)
+      while (!deflater.finished()) {
+        val count = deflater.deflate(buffer)
+        output.write(buffer, 0, count)
+      }
+      return output.toByteArray()
+    }
+    finally {
+      deflater.end()
+    }
+  }
+
+  @Throws(DataFormatException::class)
+  private fun inflate(data: ByteArray, length: Int): ByteArray {
+    val inflater = Inflater()
+    try {
+      inflater.setInput(data)
+      val payload = ByteArray(length)
+      var offset = 0
+      while (offset < length && !inflater.finished()) {
+        val count = inflater.inflate(payload, offset, length - offset)
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break
+        offset += count
+      }
+      return if (offset == length) payload else payload.copyOf(offset)
+    }
+    finally {
+      inflater.end()
+    }
+  }
+}
@@ -4,6 +4,8 @@ import com.intellij.util.io.UnsyncByteArrayInputStream
 import com.intellij.util.io.UnsyncByteArrayOutputStream
 import org.hyperskill.academy.learning.framework.impl.migration.RecordConverter
 import org.hyperskill.academy.learning.framework.impl.migration.To1VersionRecordConverter
+import org.hyperskill.academy.learning.framework.impl.migration.To2VersionRecordConverter
+import org.hyperskill.academy.learning.framework.impl.migration.To3VersionRecordConverter
 import java.io.DataInputStream
 import java.io.DataOutputStream
 import java.io.IOException
@@ -14,50 +16,53 @@ class FrameworkStorage(storagePath: Path) : FrameworkStorageBase(storagePath) {
     setVersion(version)
   }
 
+  /**
+   * @param initialState initial state of the task, texts of changed files are stored as deltas against it
+   */
   @Throws(IOException::class)
-  fun updateUserChanges(record: Int, changes: UserChanges): Int {
-    return withWriteLock<Int, IOException> {
-      val id = if (record == -1) createNewRecord() else record
-      writeStream(id, true).use(changes::write)
-      id
-    }
+  fun updateUserChanges(record: Int, changes: UserChanges, initialState: FLTaskState = emptyMap()): Int {
+    val payload = UnsyncByteArrayOutputStream()
+    DataOutputStream(payload).use { changes.write(it, initialState) }
+    val bytes = FrameworkRecordEnvelope.wrap(payload.toByteArray())
+
+    val id = if (record == -1) createRecord() else record
+    writeRecord(id, bytes)
+    return id
   }
 
+  /**
+   * @param initialText provides texts of the initial state of the task that was passed to [updateUserChanges]
+   * @throws CorruptedFrameworkRecordException if the record is damaged
+   */
   @Throws(IOException::class)
-  fun getUserChanges(record: Int): UserChanges {
-    return if (record == -1) {
-      UserChanges.empty()
-    }
-    else {
-      withReadLock<UserChanges, IOException> {
-        readStream(record).use(UserChanges.Companion::read)
-      }
-    }
+  fun getUserChanges(record: Int, initialText: (String) -> String? = { null }): UserChanges {
+    if (record == -1) return UserChanges.empty()
+
+    val payload = FrameworkRecordEnvelope.unwrap(readRecord(record))
+    return DataInputStream(UnsyncByteArrayInputStream(payload)).use { UserChanges.read(it, initialText) }
   }
 
   @Throws(IOException::class)
-  override fun migrateRecord(recordId: Int, currentVersion: Int, newVersion: Int) {
+  override fun convertRecord(bytes: ByteArray, currentVersion: Int, newVersion: Int): ByteArray {
     var version = currentVersion
-
-    val bytes = readBytes(recordId)
-    var input = UnsyncByteArrayInputStream(bytes)
-    var output = UnsyncByteArrayOutputStream()
+    var result = bytes
 
     while (version < newVersion) {
-      val converter: RecordConverter? = when (currentVersion) {
+      val converter: RecordConverter? = when (version) {
         0 -> To1VersionRecordConverter()
+        1 -> To2VersionRecordConverter()
+        2 -> To3VersionRecordConverter()
         else -> null
       }
 
       if (converter != null) {
-        output = UnsyncByteArrayOutputStream()
-        converter.convert(DataInputStream(input), DataOutputStream(output))
-        input = UnsyncByteArrayInputStream(output.toByteArray())
+        val output = UnsyncByteArrayOutputStream()
+        converter.convert(DataInputStream(UnsyncByteArrayInputStream(result)), DataOutputStream(output))
+        result = output.toByteArray()
       }
       version++
     }
 
-    writeBytes(recordId, output.toByteArraySequence(), false)
+    return result
   }
 }
-
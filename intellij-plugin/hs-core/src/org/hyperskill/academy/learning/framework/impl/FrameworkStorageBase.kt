@@ -1,5 +1,8 @@
 package org.hyperskill.academy.learning.framework.impl
 
+import com.intellij.openapi.progress.ProgressIndicator
+import com.intellij.openapi.util.io.ByteArraySequence
+import com.intellij.util.concurrency.AppExecutorUtil
 import com.intellij.util.io.StorageLockContext
 import com.intellij.util.io.storage.AbstractRecordsTable
 import com.intellij.util.io.storage.AbstractStorage
@@ -7,12 +10,16 @@ import org.jetbrains.annotations.TestOnly
 import org.jetbrains.annotations.VisibleForTesting
 import java.io.IOException
 import java.nio.file.Path
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
 import kotlin.system.measureTimeMillis
 
 abstract class FrameworkStorageBase(storagePath: Path) : AbstractStorage(storagePath) {
   @Volatile
   var isDisposed = false
 
+  private val migrationJournal = FrameworkStorageMigrationJournal(storagePath.resolveSibling("${storagePath.fileName}.migration"))
+
   override fun createRecordsTable(@Suppress("UnstableApiUsage") context: StorageLockContext, recordsFile: Path): AbstractRecordsTable =
     FrameworkRecordsTable(recordsFile, context)
 
@@ -25,26 +32,129 @@ abstract class FrameworkStorageBase(storagePath: Path) : AbstractStorage(storage
   @Throws(IOException::class)
   fun createNewRecord(): Int = myRecordsTable.createNewRecord()
 
+  /**
+   * Creates a new record under the storage lock, since the records table is shared by all the records
+   */
+  @Throws(IOException::class)
+  protected fun createRecord(): Int = withWriteLock<Int, IOException> { createNewRecord() }
+
+  /**
+   * Reads raw bytes of the record.
+   * All the records share the same files, so the storage lock is held only while the bytes are copied,
+   * and callers decode records outside of it
+   */
+  @Throws(IOException::class)
+  protected fun readRecord(record: Int): ByteArray = withReadLock<ByteArray, IOException> { readBytes(record) }
+
+  /**
+   * Writes raw bytes of the record, callers serialize records before it, outside of the storage lock
+   */
   @Throws(IOException::class)
-  fun migrate(newVersion: Int) {
+  protected fun writeRecord(record: Int, bytes: ByteArray) {
+    withWriteLock<Unit, IOException> { writeBytes(record, ByteArraySequence(bytes), false) }
+  }
+
+  /**
+   * Converts all the records to the [newVersion].
+   *
+   * Records are converted in parallel in batches of [MIGRATION_BATCH_SIZE], and the converted records are written back in order.
+   * The storage is locked only while a batch is read or written,
+   * so callers must not use the storage for other purposes until the migration is finished.
+   *
+   * The migration is resumable: before a batch is written, it is saved to [FrameworkStorageMigrationJournal].
+   * If the migration is interrupted, the next call continues after the last saved batch.
+   */
+  @Throws(IOException::class)
+  fun migrate(newVersion: Int, indicator: ProgressIndicator? = null) {
+    val currentVersion = withReadLock<Int, IOException> { version }
+    if (currentVersion >= newVersion) {
+      migrationJournal.delete()
+      return
+    }
+
+    val journalEntry = migrationJournal.read()?.takeIf { it.fromVersion == currentVersion }
+    if (journalEntry != null && journalEntry.toVersion != newVersion) {
+      // the interrupted migration must be finished first, since some records are already converted to its version
+      migrate(journalEntry.toVersion, indicator)
+      migrate(newVersion, indicator)
+      return
+    }
+
     val migrationTime = measureTimeMillis {
-      withWriteLock<Unit, IOException> {
-        val currentVersion = version
-        if (currentVersion >= newVersion) return@withWriteLock
+      var lastMigratedRecordId = 0
+      if (journalEntry != null) {
+        writeRecords(journalEntry.batch)
+        lastMigratedRecordId = journalEntry.lastRecordId
+        LOG.info("Resuming migration to $newVersion version after record $lastMigratedRecordId")
+      }
+
+      val recordIds = collectRecordIds().filter { it > lastMigratedRecordId }
+      indicator?.isIndeterminate = false
+      var migratedRecords = 0
+      for (batch in recordIds.chunked(MIGRATION_BATCH_SIZE)) {
+        indicator?.checkCanceled()
 
-        val recordIterator = myRecordsTable.createRecordIdIterator()
-        while (recordIterator.hasNextId()) {
-          val recordId = recordIterator.nextId()
-          migrateRecord(recordId, currentVersion, newVersion)
-        }
+        val records = withReadLock<List<ByteArray>, IOException> { batch.map { readBytes(it) } }
+        val convertedRecords = convertRecords(records, currentVersion, newVersion)
+        val batchToWrite = batch.zip(convertedRecords)
 
+        migrationJournal.write(FrameworkStorageMigrationJournal.Entry(currentVersion, newVersion, batchToWrite))
+        writeRecords(batchToWrite)
+
+        migratedRecords += batch.size
+        indicator?.fraction = migratedRecords.toDouble() / recordIds.size
+      }
+
+      withWriteLock<Unit, IOException> {
         version = newVersion
+        force()
       }
+      migrationJournal.delete()
     }
     LOG.info("Migration to $newVersion version took $migrationTime ms")
   }
 
-  protected abstract fun migrateRecord(recordId: Int, currentVersion: Int, newVersion: Int)
+  @Throws(IOException::class)
+  fun hasRecords(): Boolean = withReadLock<Boolean, IOException> { myRecordsTable.createRecordIdIterator().hasNextId() }
+
+  private fun collectRecordIds(): List<Int> = withReadLock<List<Int>, IOException> {
+    val recordIds = mutableListOf<Int>()
+    val recordIterator = myRecordsTable.createRecordIdIterator()
+    while (recordIterator.hasNextId()) {
+      recordIds += recordIterator.nextId()
+    }
+    recordIds.sorted()
+  }
+
+  private fun convertRecords(records: List<ByteArray>, currentVersion: Int, newVersion: Int): List<ByteArray> {
+    val futures = records.map { bytes ->
+      migrationExecutor.submit(Callable { convertRecord(bytes, currentVersion, newVersion) })
+    }
+    return futures.map { future ->
+      try {
+        future.get()
+      }
+      catch (e: ExecutionException) {
+        throw e.cause as? IOException ?: IOException("Failed to convert record", e.cause)
+      }
+    }
+  }
+
+  private fun writeRecords(records: List<Pair<Int, ByteArray>>) {
+    withWriteLock<Unit, IOException> {
+      for ((recordId, bytes) in records) {
+        writeBytes(recordId, ByteArraySequence(bytes), false)
+      }
+      force()
+    }
+  }
+
+  /**
+   * Converts the record from the [currentVersion] to the [newVersion].
+   * It is called concurrently for different records, so it must not access the storage.
+   */
+  @Throws(IOException::class)
+  protected abstract fun convertRecord(bytes: ByteArray, currentVersion: Int, newVersion: Int): ByteArray
 
   @TestOnly
   @Throws(IOException::class)
@@ -55,4 +165,13 @@ abstract class FrameworkStorageBase(storagePath: Path) : AbstractStorage(storage
       record
     }
   }
-}
\ No newline at end of file
+
+  companion object {
+    private const val MIGRATION_BATCH_SIZE = 256
+
+    private val migrationExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+      "Framework Storage Migration",
+      Runtime.getRuntime().availableProcessors()
+    )
+  }
+}
@@ -0,0 +1,70 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.util.io.DataInputOutputUtil
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+
+/**
+ * Redo log of [FrameworkStorageBase.migrate].
+ *
+ * Before converted records of a batch are written to the storage, they are saved to the journal.
+ * If the IDE crashes while the batch is written, the next migration writes the batch from the journal again
+ * and continues after its last record, so no record is converted twice.
+ */
+class FrameworkStorageMigrationJournal(private val path: Path) {
+
+  class Entry(
+    val fromVersion: Int,
+    val toVersion: Int,
+    /**
+     * Converted records that may be not written to the storage yet, in the order of their ids
+     */
+    val batch: List<Pair<Int, ByteArray>>
+  ) {
+    val lastRecordId: Int get() = batch.lastOrNull()?.first ?: 0
+  }
+
+  @Throws(IOException::class)
+  fun read(): Entry? {
+    if (!Files.exists(path)) return null
+    return DataInputStream(Files.newInputStream(path).buffered()).use { input ->
+      val fromVersion = DataInputOutputUtil.readINT(input)
+      val toVersion = DataInputOutputUtil.readINT(input)
+      val batch = List(DataInputOutputUtil.readINT(input)) {
+        val recordId = DataInputOutputUtil.readINT(input)
+        val bytes = ByteArray(DataInputOutputUtil.readINT(input))
+        input.readFully(bytes)
+        recordId to bytes
+      }
+      Entry(fromVersion, toVersion, batch)
+    }
+  }
+
+  /**
+   * Replaces the journal atomically, so a crash leaves either the previous or the new entry
+   */
+  @Throws(IOException::class)
+  fun write(entry: Entry) {
+    val tempPath = path.resolveSibling("${path.fileName}.tmp")
+    DataOutputStream(Files.newOutputStream(tempPath).buffered()).use { out ->
+      DataInputOutputUtil.writeINT(out, entry.fromVersion)
+      DataInputOutputUtil.writeINT(out, entry.toVersion)
+      DataInputOutputUtil.writeINT(out, entry.batch.size)
+      for ((recordId, bytes) in entry.batch) {
+        DataInputOutputUtil.writeINT(out, recordId)
+        DataInputOutputUtil.writeINT(out, bytes.size)
+        out.write(bytes)
+      }
+    }
+    Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+  }
+
+  @Throws(IOException::class)
+  fun delete() {
+    Files.deleteIfExists(path)
+  }
+}
@@ -0,0 +1,114 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.openapi.diagnostic.Logger
+import org.hyperskill.academy.learning.courseFormat.FileContents
+import org.hyperskill.academy.learning.courseFormat.tasks.Task
+import java.util.IdentityHashMap
+import java.util.concurrent.Executor
+
+/**
+ * Initial files of a task and the user changes stored for it
+ */
+class StoredTaskState(val initialFiles: FLTaskState, val userChanges: UserChanges)
+
+/**
+ * Loads [StoredTaskState]s of the tasks adjacent to the current one in background,
+ * so that navigation to them doesn't have to read and decode the storage while the learner waits.
+ *
+ * A prefetched state is used only if it is still valid:
+ * * every write to the framework storage must be reported with [invalidateRecord] after the write is finished.
+ *   States that were being loaded while the storage was written are discarded;
+ * * the record of the task must be the same as at the time of loading;
+ * * the task files must have the same contents objects as at the time of loading,
+ *   so any update of the initial files of the task makes the state outdated.
+ *
+ * @param loadState reads the state from the storage, throws an exception if it fails
+ */
+class FrameworkTaskStatePrefetcher(
+  private val executor: Executor,
+  private val loadState: (Task) -> StoredTaskState
+) {
+
+  private val lock = Any()
+
+  // guarded by lock
+  private val states = IdentityHashMap<Task, PrefetchedState>()
+
+  // guarded by lock, changes on every storage write
+  private var generation: Long = 0
+
+  /**
+   * Starts loading states of the [tasks] in background.
+   * States of all the other tasks are dropped, so only the states of the latest requested tasks are kept in memory.
+   */
+  fun prefetch(tasks: List<Task>) {
+    val tasksToLoad = synchronized(lock) {
+      states.keys.retainAll(tasks.toSet())
+      tasks.filter { task -> states[task]?.isValidFor(task) != true }
+    }
+
+    for (task in tasksToLoad) {
+      executor.execute { load(task) }
+    }
+  }
+
+  private fun load(task: Task) {
+    val (record, fingerprint, startGeneration) = synchronized(lock) {
+      Triple(task.record, task.filesFingerprint(), generation)
+    }
+
+    val state = try {
+      loadState(task)
+    }
+    catch (e: Exception) {
+      // the state will be loaded again during navigation, and errors will be reported there
+      LOG.debug("Failed to prefetch state of task `${task.name}`", e)
+      return
+    }
+
+    synchronized(lock) {
+      if (startGeneration != generation) return
+      states[task] = PrefetchedState(record, fingerprint, state)
+    }
+  }
+
+  /**
+   * Returns the prefetched state of the [task] if it is still valid.
+   * The state is removed, because the task is going to be changed after navigation.
+   */
+  fun takeState(task: Task): StoredTaskState? {
+    synchronized(lock) {
+      val state = states.remove(task) ?: return null
+      return if (state.isValidFor(task)) state.state else null
+    }
+  }
+
+  fun invalidateRecord(record: Int) {
+    synchronized(lock) {
+      generation++
+      states.values.removeIf { it.record == record }
+    }
+  }
+
+  fun invalidateAll() {
+    synchronized(lock) {
+      generation++
+      states.clear()
+    }
+  }
+
+  private class PrefetchedState(val record: Int, val filesFingerprint: Map<String, FileContents>, val state: StoredTaskState) {
+    fun isValidFor(task: Task): Boolean {
+      if (task.record != record) return false
+      val taskFiles = task.taskFiles
+      if (taskFiles.size != filesFingerprint.size) return false
+      return taskFiles.all { (path, taskFile) -> filesFingerprint[path] === taskFile.contents }
+    }
+  }
+
+  companion object {
+    private val LOG: Logger = Logger.getInstance(FrameworkTaskStatePrefetcher::class.java)
+
+    private fun Task.filesFingerprint(): Map<String, FileContents> = taskFiles.mapValues { it.value.contents }
+  }
+}
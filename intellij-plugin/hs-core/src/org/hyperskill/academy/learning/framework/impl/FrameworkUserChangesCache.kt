@@ -0,0 +1,173 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.registry.Registry
+import com.intellij.serviceContainer.NonInjectable
+import org.jetbrains.annotations.VisibleForTesting
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Keeps [UserChanges] decoded from the framework storage in memory, so that they are not read and decoded on every access.
+ *
+ * Entries are keyed by record ids and must be invalidated with [invalidate] when a record is written.
+ * The total size of the cached changes is limited by [maxWeight] bytes, the least recently used entries are evicted first.
+ *
+ * Texts stored as deltas depend on the initial texts of the task, see [UserChanges.read],
+ * so an entry remembers the initial texts it was decoded with together with their versions,
+ * and it is not used if the initial texts are different.
+ * Versions are compared by identity, so a hit doesn't load the initial texts,
+ * they are loaded and compared only if a version has changed.
+ */
+@Service(Service.Level.PROJECT)
+class FrameworkUserChangesCache @NonInjectable @VisibleForTesting constructor(private val maxWeight: Long) {
+
+  constructor() : this(getFrameworkUserChangesCacheSize())
+
+  private class Entry(val changes: UserChanges, val initialTexts: Map<String, String?>, val initialTextVersions: Map<String, Any?>) {
+    val weight: Long = ENTRY_OVERHEAD +
+                       changes.changes.sumOf { 2L * (it.path.length + it.text.length) + ENTRY_OVERHEAD } +
+                       initialTexts.values.sumOf { 2L * (it?.length ?: 0) }
+
+    fun hasSameVersions(initialTextVersion: (String) -> Any?): Boolean =
+      initialTextVersions.all { (path, version) -> version != null && initialTextVersion(path) === version }
+
+    fun isDecodedWith(initialText: (String) -> String?): Boolean = initialTexts.all { (path, text) -> initialText(path) == text }
+
+    fun withVersions(initialTextVersion: (String) -> Any?): Entry =
+      Entry(changes, initialTexts, initialTexts.keys.associateWith(initialTextVersion))
+  }
+
+  // access ordered map, so that the iteration starts from the least recently used entry
+  private val entries = LinkedHashMap<Int, Entry>(16, 0.75f, true)
+  private var currentWeight = 0L
+
+  // incremented on every invalidation, so that changes loaded concurrently with writes are not cached
+  private var modificationCount = 0L
+
+  private val hitCounter = AtomicLong()
+  private val missCounter = AtomicLong()
+  private val evictionCounter = AtomicLong()
+  private val invalidationCounter = AtomicLong()
+
+  val hits: Long get() = hitCounter.get()
+  val misses: Long get() = missCounter.get()
+  val evictions: Long get() = evictionCounter.get()
+  val weight: Long get() = synchronized(entries) { currentWeight }
+
+  /**
+   * Returns the cached changes of the [record] or decodes them with [load].
+   * [load] must use the passed initial text provider instead of [initialText], so that the used initial texts are tracked.
+   *
+   * @param initialTextVersion returns an object that is replaced whenever the initial text of the path changes,
+   * e.g. the contents of the task file, or `null` if the version is unknown
+   */
+  @Throws(IOException::class)
+  fun getOrLoad(
+    record: Int,
+    initialText: (String) -> String?,
+    initialTextVersion: (String) -> Any?,
+    load: (initialText: (String) -> String?) -> UserChanges
+  ): UserChanges {
+    if (record == -1) return UserChanges.empty()
+
+    val (entry, modificationCountBeforeLoad) = synchronized(entries) { entries[record] to modificationCount }
+    if (entry != null && entry.hasSameVersions(initialTextVersion)) {
+      hitCounter.incrementAndGet()
+      return entry.changes
+    }
+    // initial texts may be loaded from the learning objects storage, so they are checked outside the lock
+    if (entry != null && entry.isDecodedWith(initialText)) {
+      hitCounter.incrementAndGet()
+      synchronized(entries) {
+        // the next hits don't load the initial texts
+        if (modificationCount == modificationCountBeforeLoad && entries[record] === entry) {
+          putEntry(record, entry.withVersions(initialTextVersion))
+        }
+      }
+      return entry.changes
+    }
+    missCounter.incrementAndGet()
+
+    val usedInitialTexts = HashMap<String, String?>()
+    val usedInitialTextVersions = HashMap<String, Any?>()
+    val changes = load { path ->
+      // the version is taken before the text, so a text changed in between is loaded again on the next access
+      usedInitialTextVersions[path] = initialTextVersion(path)
+      val text = initialText(path)
+      usedInitialTexts[path] = text
+      text
+    }
+
+    synchronized(entries) {
+      if (modificationCount == modificationCountBeforeLoad) {
+        putEntry(record, Entry(changes, usedInitialTexts, usedInitialTextVersions))
+      }
+    }
+    return changes
+  }
+
+  fun invalidate(record: Int) {
+    invalidationCounter.incrementAndGet()
+    synchronized(entries) {
+      modificationCount++
+      val removed = entries.remove(record) ?: return
+      currentWeight -= removed.weight
+    }
+  }
+
+  fun clear() {
+    synchronized(entries) {
+      modificationCount++
+      entries.clear()
+      currentWeight = 0
+    }
+  }
+
+  // must be called under the lock
+  private fun putEntry(record: Int, entry: Entry) {
+    if (entry.weight > maxWeight) return
+    val previous = entries.put(record, entry)
+    if (previous != null) {
+      currentWeight -= previous.weight
+    }
+    currentWeight += entry.weight
+    evictIfNeeded()
+  }
+
+  // must be called under the lock
+  private fun evictIfNeeded() {
+    val iterator = entries.values.iterator()
+    while (currentWeight > maxWeight && iterator.hasNext()) {
+      val eldest = iterator.next()
+      iterator.remove()
+      currentWeight -= eldest.weight
+      evictionCounter.incrementAndGet()
+    }
+  }
+
+  /**
+   * Human-readable dump of the cache metrics
+   */
+  fun dump(): String {
+    val (size, weight) = synchronized(entries) { entries.size to currentWeight }
+    return "Framework lesson changes cache: entries=$size weight=$weight/$maxWeight " +
+           "hits=$hits misses=$misses evictions=$evictions invalidations=${invalidationCounter.get()}"
+  }
+
+  companion object {
+    private const val ENTRY_OVERHEAD = 64L
+
+    private const val CACHE_SIZE_REGISTRY_KEY = "hyperskill.framework.lesson.changes.cache.size.kb"
+    private const val DEFAULT_CACHE_SIZE_KB = 4096
+
+    /**
+     * Size of the cache in bytes, zero means that the cache is disabled
+     */
+    private fun getFrameworkUserChangesCacheSize(): Long = Registry.intValue(CACHE_SIZE_REGISTRY_KEY, DEFAULT_CACHE_SIZE_KB).toLong() * 1024
+
+    fun getInstance(project: Project): FrameworkUserChangesCache = project.service()
+  }
+}
@@ -0,0 +1,95 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.vfs.VirtualFile
+import org.hyperskill.academy.learning.isToEncodeContent
+import org.hyperskill.academy.learning.loadEncodedContent
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Remembers the last known texts of task files in framework lessons together with their fingerprints:
+ * modification stamps of the virtual file and of its document, and the hash of the text.
+ *
+ * A file whose stamps didn't change since the last snapshot is not read again.
+ * A file that was read again but has the same text as before, or as in the initial state of the task,
+ * shares the same string object with it, so that the following comparisons of states don't compare texts char by char.
+ * So the time needed to get the state of a task doesn't depend on the number and size of the untouched files.
+ */
+class TaskFilesFingerprints {
+
+  private val snapshots = ConcurrentHashMap<VirtualFile, Map<String, FileFingerprint>>()
+
+  /**
+   * Same as [getTaskStateFromFiles], but reuses texts of the files that didn't change since the previous call for the [taskDir]
+   */
+  fun getTaskState(initialState: FLTaskState, taskDir: VirtualFile): FLTaskState {
+    val previousSnapshot = snapshots[taskDir].orEmpty()
+    val snapshot = HashMap<String, FileFingerprint>()
+    val currentState = HashMap<String, String>()
+
+    for ((path, initialText) in initialState) {
+      val file = taskDir.findFileByRelativePath(path) ?: continue
+      val fingerprint = getFingerprint(file, previousSnapshot[path], initialText) ?: continue
+      snapshot[path] = fingerprint
+      currentState[path] = fingerprint.text
+    }
+
+    snapshots[taskDir] = snapshot
+    return currentState
+  }
+
+  fun clear() {
+    snapshots.clear()
+  }
+
+  private fun getFingerprint(file: VirtualFile, previous: FileFingerprint?, initialText: String): FileFingerprint? {
+    if (previous != null && previous.isUpToDate(file)) return previous
+
+    val fingerprint = if (file.isToEncodeContent) {
+      val modificationStamp = file.modificationStamp
+      val text = file.loadEncodedContent(isToEncodeContent = true)
+      FileFingerprint(file, modificationStamp, NO_DOCUMENT, text)
+    }
+    else {
+      runReadAction {
+        val document = FileDocumentManager.getInstance().getDocument(file) ?: return@runReadAction null
+        FileFingerprint(file, file.modificationStamp, document.modificationStamp, document.text)
+      }
+    } ?: return null
+
+    val text = fingerprint.text
+    return when {
+      isSameText(text, initialText) -> fingerprint.withText(initialText)
+      previous != null && isSameText(text, previous.text) -> fingerprint.withText(previous.text)
+      else -> fingerprint
+    }
+  }
+
+  private class FileFingerprint(
+    val file: VirtualFile,
+    val modificationStamp: Long,
+    val documentModificationStamp: Long,
+    val text: String
+  ) {
+    fun isUpToDate(file: VirtualFile): Boolean {
+      if (file != this.file || !file.isValid || file.modificationStamp != modificationStamp) return false
+      if (file.isToEncodeContent) return true
+      // the document is not cached anymore, or it has unsaved changes
+      val document = FileDocumentManager.getInstance().getCachedDocument(file) ?: return false
+      return document.modificationStamp == documentModificationStamp
+    }
+
+    fun withText(text: String): FileFingerprint = FileFingerprint(file, modificationStamp, documentModificationStamp, text)
+  }
+
+  companion object {
+    private const val NO_DOCUMENT: Long = -1
+
+    /**
+     * Compares texts by their cached hashes first, so different texts are usually not compared char by char
+     */
+    private fun isSameText(text: String, other: String): Boolean =
+      text === other || (text.length == other.length && text.hashCode() == other.hashCode() && text == other)
+  }
+}
@@ -1,5 +1,6 @@
 package org.hyperskill.academy.learning.framework.impl
 
+import com.intellij.openapi.application.invokeAndWaitIfNeeded
 import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.application.runUndoTransparentWriteAction
 import com.intellij.openapi.application.runWriteAction
@@ -20,13 +21,33 @@ import java.io.DataInput
 import java.io.DataOutput
 import java.io.IOException
 
-class UserChanges(val changes: List<Change>, val timestamp: Long = System.currentTimeMillis()) : FrameworkStorageData {
+/**
+ * @param unresolvedPaths paths of changed files that were read without their texts,
+ * because the texts were stored as deltas against initial texts that have changed since, see [read]
+ */
+class UserChanges(
+  val changes: List<Change>,
+  val timestamp: Long = System.currentTimeMillis(),
+  val unresolvedPaths: List<String> = emptyList()
+) : FrameworkStorageData {
 
   operator fun plus(otherChanges: List<Change>): UserChanges = UserChanges(changes + otherChanges)
 
+  /**
+   * Applies all the changes in a single undo transparent write action,
+   * so that switching to a task with many changed files doesn't cause a write action and editor reload per file.
+   * Tracking of the task files changes is suppressed until all the changes are applied.
+   */
   fun apply(project: Project, taskDir: VirtualFile, task: Task) {
-    for (change in changes) {
-      change.apply(project, taskDir, task)
+    if (changes.isEmpty()) return
+    EduDocumentListener.modifyWithoutListener(task) {
+      invokeAndWaitIfNeeded {
+        runUndoTransparentWriteAction {
+          for (change in changes) {
+            change.apply(project, taskDir, task)
+          }
+        }
+      }
     }
   }
 
@@ -37,9 +58,17 @@ class UserChanges(val changes: List<Change>, val timestamp: Long = System.curren
   }
 
   @Throws(IOException::class)
-  override fun write(out: DataOutput) {
+  override fun write(out: DataOutput) = write(out, emptyMap())
+
+  /**
+   * Writes changes in the current record format.
+   * Texts of changed files are written as deltas against their texts in the [initialState] when it makes them smaller,
+   * so the same [initialState] must be passed to [read] later.
+   */
+  @Throws(IOException::class)
+  fun write(out: DataOutput, initialState: FLTaskState) {
     DataInputOutputUtil.writeINT(out, changes.size)
-    changes.forEach { Change.writeChange(it, out) }
+    changes.forEach { Change.writeChange(it, out, initialState) }
     DataInputOutputUtil.writeLONG(out, timestamp)
   }
 
@@ -49,15 +78,23 @@ class UserChanges(val changes: List<Change>, val timestamp: Long = System.curren
 
     fun empty(): UserChanges = EMPTY
 
+    /**
+     * Reads changes written by [write].
+     *
+     * @param initialText provides initial texts of task files, it is called only for changes written as deltas.
+     * A change whose delta was computed against another initial text can't be restored,
+     * so it is omitted, and its path is reported in [unresolvedPaths].
+     */
     @Throws(IOException::class)
-    fun read(input: DataInput): UserChanges {
+    fun read(input: DataInput, initialText: (String) -> String? = { null }): UserChanges {
       val size = DataInputOutputUtil.readINT(input)
       val changes = ArrayList<Change>(size)
+      val unresolvedPaths = mutableListOf<String>()
       for (i in 0 until size) {
-        changes += Change.readChange(input)
+        changes += Change.readChange(input, initialText) { path -> unresolvedPaths += path } ?: continue
       }
       val timestamp = DataInputOutputUtil.readLONG(input)
-      return UserChanges(changes, timestamp)
+      return UserChanges(changes, timestamp, unresolvedPaths)
     }
   }
 }
@@ -239,30 +276,81 @@ sealed class Change {
   companion object {
     private val LOG: Logger = Logger.getInstance(Change::class.java)
 
+    /**
+     * Writes a change in the format of records of versions 0 and 1
+     */
     @Throws(IOException::class)
     fun writeChange(change: Change, out: DataOutput) {
-      val ordinal = when (change) {
-        is AddFile -> 0
-        is RemoveFile -> 1
-        is ChangeFile -> 2
-        is PropagateLearnerCreatedTaskFile -> 3
-        is RemoveTaskFile -> 4
-      }
-      out.writeInt(ordinal)
+      out.writeInt(change.ordinal)
       change.write(out)
     }
 
+    /**
+     * Reads a change in the format of records of versions 0 and 1
+     */
     @Throws(IOException::class)
     fun readChange(input: DataInput): Change {
       val ordinal = input.readInt()
       return when (ordinal) {
-        0 -> AddFile(input)
-        1 -> RemoveFile(input)
-        2 -> ChangeFile(input)
-        3 -> PropagateLearnerCreatedTaskFile(input)
-        4 -> RemoveTaskFile(input)
+        ADD_FILE -> AddFile(input)
+        REMOVE_FILE -> RemoveFile(input)
+        CHANGE_FILE -> ChangeFile(input)
+        PROPAGATE_LEARNER_CREATED_TASK_FILE -> PropagateLearnerCreatedTaskFile(input)
+        REMOVE_TASK_FILE -> RemoveTaskFile(input)
+        else -> error("Unexpected change type: $ordinal")
+      }
+    }
+
+    /**
+     * Writes a change in the current record format, see [UserChanges.write]
+     */
+    @Throws(IOException::class)
+    fun writeChange(change: Change, out: DataOutput, initialState: FLTaskState) {
+      out.writeInt(change.ordinal)
+      out.writeUTF(change.path)
+      val initialText = if (change is ChangeFile) initialState[change.path] else null
+      ChangeTextEncoding.write(out, change.text, initialText)
+    }
+
+    /**
+     * Reads a change in the current record format, see [UserChanges.read].
+     * Returns `null` and calls [onUnresolved] if the change was written as a delta against an initial text
+     * that is not the current initial text of the file.
+     */
+    @Throws(IOException::class)
+    fun readChange(input: DataInput, initialText: (String) -> String?, onUnresolved: (path: String) -> Unit): Change? {
+      val ordinal = input.readInt()
+      val path = input.readUTF()
+      val text = ChangeTextEncoding.read(input, if (ordinal == CHANGE_FILE) initialText(path) else null)
+      if (text == null) {
+        LOG.warn("Initial text of `$path` has changed since the change was saved, the change can't be restored")
+        onUnresolved(path)
+        return null
+      }
+
+      return when (ordinal) {
+        ADD_FILE -> AddFile(path, text)
+        REMOVE_FILE -> RemoveFile(path)
+        CHANGE_FILE -> ChangeFile(path, text)
+        PROPAGATE_LEARNER_CREATED_TASK_FILE -> PropagateLearnerCreatedTaskFile(path, text)
+        REMOVE_TASK_FILE -> RemoveTaskFile(path)
         else -> error("Unexpected change type: $ordinal")
       }
     }
+
+    private val Change.ordinal: Int
+      get() = when (this) {
+        is AddFile -> ADD_FILE
+        is RemoveFile -> REMOVE_FILE
+        is ChangeFile -> CHANGE_FILE
+        is PropagateLearnerCreatedTaskFile -> PROPAGATE_LEARNER_CREATED_TASK_FILE
+        is RemoveTaskFile -> REMOVE_TASK_FILE
+      }
+
+    private const val ADD_FILE = 0
+    private const val REMOVE_FILE = 1
+    private const val CHANGE_FILE = 2
+    private const val PROPAGATE_LEARNER_CREATED_TASK_FILE = 3
+    private const val REMOVE_TASK_FILE = 4
   }
 }
@@ -0,0 +1,18 @@
+package org.hyperskill.academy.learning.framework.impl.migration
+
+import org.hyperskill.academy.learning.framework.impl.UserChanges
+import java.io.DataInput
+import java.io.DataOutput
+
+/**
+ * Version 2 stores change texts as length-prefixed UTF-8 bytes and may store them as deltas against initial task files.
+ * Initial task files are unknown during migration, so all the texts are converted as full texts.
+ */
+class To2VersionRecordConverter : RecordConverter {
+
+  override fun convert(input: DataInput, output: DataOutput) {
+    val oldChanges = UserChanges1.read(input)
+    val newChanges = UserChanges(oldChanges.changes, oldChanges.timestamp)
+    newChanges.write(output)
+  }
+}
@@ -0,0 +1,27 @@
+package org.hyperskill.academy.learning.framework.impl.migration
+
+import com.intellij.util.io.UnsyncByteArrayOutputStream
+import org.hyperskill.academy.learning.framework.impl.FrameworkRecordEnvelope
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.EOFException
+
+/**
+ * Version 3 wraps the version 2 payload into a compressed and checksummed envelope, see [FrameworkRecordEnvelope].
+ * The payload is copied as is, so changes stored as deltas stay valid.
+ */
+class To3VersionRecordConverter : RecordConverter {
+
+  override fun convert(input: DataInput, output: DataOutput) {
+    val payload = UnsyncByteArrayOutputStream()
+    try {
+      while (true) {
+        payload.write(input.readUnsignedByte())
+      }
+    }
+    catch (_: EOFException) {
+      // the whole record is read
+    }
+    output.write(FrameworkRecordEnvelope.wrap(payload.toByteArray()))
+  }
+}
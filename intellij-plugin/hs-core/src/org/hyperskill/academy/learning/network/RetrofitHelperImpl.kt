@@ -1,11 +1,14 @@
 package org.hyperskill.academy.learning.network
 
+import com.intellij.openapi.application.PathManager
 import com.intellij.openapi.application.ex.ApplicationUtil
 import com.intellij.openapi.diagnostic.logger
 import com.intellij.openapi.progress.ProcessCanceledException
 import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.util.registry.Registry
 import com.intellij.util.PlatformUtils
 import com.intellij.util.net.ssl.CertificateManager
+import okhttp3.Cache
 import okhttp3.OkHttpClient
 import org.hyperskill.academy.learning.*
 import org.hyperskill.academy.learning.messages.EduFormatBundle
@@ -13,12 +16,14 @@ import org.hyperskill.academy.learning.newproject.CoursesDownloadingException
 import org.hyperskill.academy.learning.stepik.StepikNames
 import retrofit2.Call
 import retrofit2.Response
+import java.io.File
 import java.io.IOException
 import java.io.InterruptedIOException
 import java.net.InetSocketAddress
 import java.net.Proxy
 import java.net.ProxySelector
 import java.net.URI
+import java.util.concurrent.TimeUnit
 
 /**
  * This is a service class, NOT intended to be instantiated directly
@@ -101,6 +106,35 @@ class RetrofitHelperImpl : RetrofitHelper {
       )
     }
 
+  /**
+   * The same instance must be used by all clients, because OkHttp doesn't support several caches in the same directory
+   */
+  override val httpCache: Cache? by lazy {
+    // tests use different mock responses for the same urls
+    if (isUnitTestMode) return@lazy null
+    val sizeMb = Registry.intValue(HTTP_CACHE_SIZE_REGISTRY_KEY, DEFAULT_HTTP_CACHE_SIZE_MB)
+    if (sizeMb <= 0) return@lazy null
+    Cache(File(PathManager.getSystemPath(), HTTP_CACHE_DIR_NAME), sizeMb * 1024L * 1024L)
+  }
+
+  private val maxConcurrentRequests: (String) -> Int by lazy {
+    parseLimits(Registry.stringValue(MAX_CONCURRENT_REQUESTS_REGISTRY_KEY), DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST)
+  }
+
+  override fun getMaxConcurrentRequests(host: String): Int = maxConcurrentRequests(host)
+
+  override val resiliencePolicy: ResiliencePolicy by lazy {
+    // tests expect exactly one request per call, and failures of one test must not cut off the mock server for the next ones
+    if (isUnitTestMode) return@lazy ResiliencePolicy.DISABLED
+    ResiliencePolicy(
+      maxAttempts = Registry.intValue(RETRY_MAX_ATTEMPTS_REGISTRY_KEY, DEFAULT_RETRY_MAX_ATTEMPTS),
+      baseDelayMillis = Registry.intValue(RETRY_BASE_DELAY_REGISTRY_KEY, DEFAULT_RETRY_BASE_DELAY_MS).toLong(),
+      failureThreshold = Registry.intValue(CIRCUIT_FAILURE_THRESHOLD_REGISTRY_KEY, DEFAULT_CIRCUIT_FAILURE_THRESHOLD),
+      openCircuitMillis = TimeUnit.SECONDS.toMillis(Registry.intValue(CIRCUIT_OPEN_REGISTRY_KEY, DEFAULT_CIRCUIT_OPEN_SECONDS).toLong()),
+      timeoutSeconds = parseLimits(Registry.stringValue(ENDPOINT_TIMEOUTS_REGISTRY_KEY), 0)
+    )
+  }
+
   private fun log(title: String, message: String?, optional: Boolean) {
     val fullText = "$title. $message"
     if (optional) LOG.warn(fullText) else LOG.error(fullText)
@@ -108,5 +142,21 @@ class RetrofitHelperImpl : RetrofitHelper {
 
   companion object {
     private val LOG = logger<RetrofitHelperImpl>()
+
+    private const val HTTP_CACHE_DIR_NAME = "hyperskill-http-cache"
+    private const val HTTP_CACHE_SIZE_REGISTRY_KEY = "hyperskill.http.cache.size.mb"
+    private const val DEFAULT_HTTP_CACHE_SIZE_MB = 50
+
+    private const val MAX_CONCURRENT_REQUESTS_REGISTRY_KEY = "hyperskill.network.max.concurrent.requests.per.host"
+
+    private const val RETRY_MAX_ATTEMPTS_REGISTRY_KEY = "hyperskill.network.retry.max.attempts"
+    private const val DEFAULT_RETRY_MAX_ATTEMPTS = 3
+    private const val RETRY_BASE_DELAY_REGISTRY_KEY = "hyperskill.network.retry.base.delay.ms"
+    private const val DEFAULT_RETRY_BASE_DELAY_MS = 500
+    private const val CIRCUIT_FAILURE_THRESHOLD_REGISTRY_KEY = "hyperskill.network.circuit.failure.threshold"
+    private const val DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5
+    private const val CIRCUIT_OPEN_REGISTRY_KEY = "hyperskill.network.circuit.open.seconds"
+    private const val DEFAULT_CIRCUIT_OPEN_SECONDS = 30
+    private const val ENDPOINT_TIMEOUTS_REGISTRY_KEY = "hyperskill.network.endpoint.timeouts"
   }
 }
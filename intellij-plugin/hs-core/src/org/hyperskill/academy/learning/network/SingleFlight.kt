@@ -0,0 +1,56 @@
+package org.hyperskill.academy.learning.network
+
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Coalesces concurrent identical calls.
+ * While a call with some key is in flight, other calls with the same key don't run their own computation,
+ * but wait for the running one and get the same result.
+ *
+ * Results are not cached: a call started after the previous one with the same key has finished runs again.
+ * If the running call throws, e.g. because its progress is cancelled, the waiting calls don't get the exception,
+ * and one of them runs the computation again.
+ */
+class SingleFlight<K : Any> {
+  private val inFlight = ConcurrentHashMap<K, CompletableFuture<Any?>>()
+  private val coalescedCounter = AtomicLong()
+
+  /**
+   * Number of calls that got the result of another running call
+   */
+  val coalescedCalls: Long get() = coalescedCounter.get()
+
+  fun <V> execute(key: K, call: () -> V): V {
+    while (true) {
+      val future = CompletableFuture<Any?>()
+      val running = inFlight.putIfAbsent(key, future)
+      if (running == null) {
+        return runCall(key, future, call)
+      }
+      val result = ProgressIndicatorUtils.awaitWithCheckCanceled(running)
+      if (result !== FAILED) {
+        coalescedCounter.incrementAndGet()
+        @Suppress("UNCHECKED_CAST")
+        return result as V
+      }
+    }
+  }
+
+  private fun <V> runCall(key: K, future: CompletableFuture<Any?>, call: () -> V): V {
+    var result: Any? = FAILED
+    try {
+      return call().also { result = it }
+    }
+    finally {
+      inFlight.remove(key, future)
+      future.complete(result)
+    }
+  }
+
+  companion object {
+    private val FAILED = Any()
+  }
+}
@@ -43,12 +43,22 @@ class HyperskillStartupActivity : ProjectActivity {
       }
     })
 
+    synchronizeCourseStructure(course)
     synchronizeTopics(project, course)
     HyperskillCourseUpdateChecker.getInstance(project).check()
   }
 
 }
 
+/**
+ * Refreshes the cached structure of the course opened from the cache, see [HyperskillConnector.syncCourseStructure]
+ */
+private fun synchronizeCourseStructure(hyperskillCourse: HyperskillCourse) {
+  ApplicationManager.getApplication().executeOnPooledThread {
+    HyperskillConnector.getInstance().syncCourseStructure(hyperskillCourse)
+  }
+}
+
 fun synchronizeTopics(project: Project, hyperskillCourse: HyperskillCourse) {
   ApplicationManager.getApplication().executeOnPooledThread {
     HyperskillConnector.getInstance().fillTopics(project, hyperskillCourse)
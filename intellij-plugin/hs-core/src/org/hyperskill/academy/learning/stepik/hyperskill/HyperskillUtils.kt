@@ -4,8 +4,10 @@ import com.intellij.notification.NotificationAction
 import com.intellij.notification.NotificationType.ERROR
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils
 import com.intellij.openapi.project.Project
 import com.intellij.ui.HyperlinkAdapter
+import com.intellij.util.concurrency.AppExecutorUtil
 import org.hyperskill.academy.learning.*
 import org.hyperskill.academy.learning.configuration.EduConfiguratorManager
 import org.hyperskill.academy.learning.courseFormat.*
@@ -30,10 +32,15 @@ import org.hyperskill.academy.learning.stepik.hyperskill.courseGeneration.Hypers
 import org.hyperskill.academy.learning.stepik.hyperskill.courseGeneration.HyperskillOpenStepWithProjectRequest
 import org.hyperskill.academy.learning.stepik.hyperskill.settings.HyperskillSettings
 import org.hyperskill.academy.learning.yaml.YamlFormatSynchronizer
+import java.util.concurrent.Callable
 import javax.swing.event.HyperlinkEvent
+import kotlin.math.min
 
 private val LOG: Logger = Logger.getInstance("HyperskillUtils")
 
+private const val MAX_CONCURRENT_PAGES = 4
+private val PAGE_LOADING_EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor("Hyperskill Pages Loader", MAX_CONCURRENT_PAGES * 2)
+
 fun openSelectedStage(course: Course, project: Project) {
   if (course !is HyperskillCourse) {
     return
@@ -277,17 +284,38 @@ private fun showNoNextActivityNotification(task: Task?, project: Project) {
     .notify(project)
 }
 
+/**
+ * Fetches all pages of a paginated response and returns them in the order of pages.
+ *
+ * The API doesn't report the number of pages, only whether there is a next one.
+ * So after the first page, the following pages are requested speculatively in windows of pages loaded concurrently.
+ * The window size is doubled after every window up to [MAX_CONCURRENT_PAGES].
+ * Pages after the last one are discarded, so at most `MAX_CONCURRENT_PAGES - 1` redundant requests are made.
+ */
 fun <T : WithPaginationMetaData> withPageIteration(fetchData: (Int) -> Result<T, String>): Result<List<T>, String> {
   val acc = mutableListOf<T>()
-  var page = 1
-
-  do {
-    val result = fetchData(page++).onError { return Err(it) }
-    acc.add(result)
+  val firstPage = fetchData(1).onError { return Err(it) }
+  acc.add(firstPage)
+  if (!firstPage.meta.hasNext) return Ok(acc.toList())
+
+  var nextPage = 2
+  var windowSize = 2
+  while (true) {
+    val pages = (nextPage until nextPage + windowSize).map { page -> PAGE_LOADING_EXECUTOR.submit(Callable { fetchData(page) }) }
+    try {
+      for (page in pages) {
+        val result = ProgressIndicatorUtils.awaitWithCheckCanceled(page).onError { return Err(it) }
+        acc.add(result)
+        if (!result.meta.hasNext) return Ok(acc.toList())
+      }
+    }
+    finally {
+      // requests for pages after the last one or after a failed one are not needed anymore
+      pages.forEach { it.cancel(true) }
+    }
+    nextPage += windowSize
+    windowSize = min(windowSize * 2, MAX_CONCURRENT_PAGES)
   }
-  while (result.meta.hasNext)
-
-  return Ok(acc.toList())
 }
 
 private sealed class NextActivityInfo {
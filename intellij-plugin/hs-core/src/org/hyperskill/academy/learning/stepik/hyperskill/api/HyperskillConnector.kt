@@ -1,13 +1,18 @@
 package org.hyperskill.academy.learning.stepik.hyperskill.api
 
+import com.fasterxml.jackson.core.JsonProcessingException
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.module.SimpleModule
+import com.fasterxml.jackson.databind.node.ObjectNode
 import com.intellij.openapi.application.runInEdt
 import com.intellij.openapi.components.service
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.progress.ProcessCanceledException
 import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils
 import com.intellij.openapi.project.Project
+import com.intellij.util.concurrency.AppExecutorUtil
 import okhttp3.*
 import org.apache.http.client.utils.URIBuilder
 import org.hyperskill.academy.learning.*
@@ -18,14 +23,17 @@ import org.hyperskill.academy.learning.courseFormat.EduFormatNames.HYPERSKILL
 import org.hyperskill.academy.learning.courseFormat.FrameworkLesson
 import org.hyperskill.academy.learning.courseFormat.Lesson
 import org.hyperskill.academy.learning.courseFormat.attempts.Attempt
+import org.hyperskill.academy.learning.courseFormat.ext.allTasks
 import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillCourse
 import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillProject
 import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillStage
 import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillTopic
 import org.hyperskill.academy.learning.courseFormat.tasks.Task
 import org.hyperskill.academy.learning.messages.EduCoreBundle
+import org.hyperskill.academy.learning.network.SingleFlight
 import org.hyperskill.academy.learning.network.executeHandlingExceptions
 import org.hyperskill.academy.learning.network.executeParsingErrors
+import org.hyperskill.academy.learning.network.sharedOkHttpClient
 import org.hyperskill.academy.learning.stepik.PyCharmStepOptions
 import org.hyperskill.academy.learning.stepik.api.*
 import org.hyperskill.academy.learning.stepik.api.StepikBasedConnector.Companion.createObjectMapper
@@ -35,8 +43,11 @@ import org.hyperskill.academy.learning.stepik.hyperskill.courseGeneration.Hypers
 import org.hyperskill.academy.learning.stepik.hyperskill.settings.HyperskillSettings
 import org.hyperskill.academy.learning.taskToolWindow.ui.TaskToolWindowView
 import org.hyperskill.academy.learning.taskToolWindow.ui.tab.TabType.TOPICS_TAB
+import org.jetbrains.annotations.TestOnly
 import org.jetbrains.ide.BuiltInServerManager
 import retrofit2.Call
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
@@ -86,6 +97,19 @@ abstract class HyperskillConnector : EduOAuthCodeFlowConnector<HyperskillAccount
   private val hyperskillEndpoints: HyperskillEndpoints
     get() = getEndpoints()
 
+  private val inFlightRequests = SingleFlight<List<Any?>>()
+
+  // tests use different mock responses for the same steps
+  private val stepSourceCache = HyperskillStepSourceCache(if (isUnitTestMode) 0 else STEP_SOURCES_CACHE_TTL_MS)
+
+  /**
+   * Projects, stages, topics and step sources are loaded from the server only if they aren't cached yet or their cached entries are stale.
+   * Stale entries are returned only if they fail to reload, e.g. without network access.
+   * Tests use different mock responses for the same ids, so the cache is disabled there.
+   */
+  var courseStructureCache: HyperskillCourseStructureCache? = if (isUnitTestMode) null else HyperskillCourseStructureCache.create(objectMapper)
+    @TestOnly set
+
   override fun doRefreshTokens() {
     refreshTokens()
   }
@@ -117,55 +141,218 @@ abstract class HyperskillConnector : EduOAuthCodeFlowConnector<HyperskillAccount
   }
 
   fun getStages(projectId: Int): List<HyperskillStage>? {
-    return withPageIteration { page -> hyperskillEndpoints.stages(projectId, page).executeAndExtractFromBody() }
-      .onError { return null }
-      .flatMap { it.stages }
+    val cached = courseStructureCache?.getStages(account?.userInfo?.id, projectId)
+    return cachedOrFetched(cached, "stages of project $projectId") { fetchStages(projectId) }.onError { return null }
+  }
+
+  private fun fetchStages(projectId: Int): Result<List<HyperskillStage>, String> {
+    val userId = account?.userInfo?.id
+    return singleFlight("stages", projectId) {
+      withPageIteration { page -> hyperskillEndpoints.stages(projectId, page).executeAndExtractFromBody() }
+    }.map { stagesLists ->
+      stagesLists.flatMap { it.stages }.also { courseStructureCache?.putStages(userId, projectId, it) }
+    }
   }
 
   fun getProject(projectId: Int): Result<HyperskillProject, String> {
-    return hyperskillEndpoints.project(projectId).executeParsingErrors(true).flatMap {
-      val result = it.body()?.projects?.firstOrNull()
-      if (result == null) Err(it.message()) else Ok(result)
+    val cached = courseStructureCache?.getProject(account?.userInfo?.id, projectId)
+    return cachedOrFetched(cached, "project $projectId") { fetchProject(projectId) }
+  }
+
+  /**
+   * Returns the [cached] value if it's fresh, otherwise loads the value with [fetch].
+   * The stale [cached] value is returned only if the value fails to load.
+   */
+  private fun <T> cachedOrFetched(
+    cached: HyperskillCourseStructureCache.CachedValue<T>?,
+    item: String,
+    fetch: () -> Result<T, String>
+  ): Result<T, String> {
+    if (cached != null && !cached.isStale) return Ok(cached.value)
+    val fetched = fetch()
+    if (fetched is Err && cached != null) {
+      LOG.warn("Failed to reload $item, the cached value is used: ${fetched.error}")
+      return Ok(cached.value)
     }
+    return fetched
   }
 
-  private fun getStepSources(stepIds: List<Int>): Result<List<HyperskillStepSource>, String> =
-    withPageIteration { page ->
-      hyperskillEndpoints.steps(
-        stepIds.joinToString(separator = ","),
-        page
-      ).executeAndExtractFromBody()
-    }.flatMap { hyperskillStepsLists -> Ok(hyperskillStepsLists.flatMap { it.steps }) }
+  private fun fetchProject(projectId: Int): Result<HyperskillProject, String> {
+    val userId = account?.userInfo?.id
+    return singleFlight("project", projectId) {
+      hyperskillEndpoints.project(projectId).executeParsingErrors(true).flatMap {
+        val result = it.body()?.projects?.firstOrNull()
+        if (result == null) Err(it.message()) else Ok(result)
+      }
+    }.map { it.also { project -> courseStructureCache?.putProject(userId, project) } }
+  }
+
+  /**
+   * Returns step sources of distinct [stepIds] in the order of their first occurrence.
+   * Recently loaded step sources and fresh persistently cached ones are not requested again.
+   * Stale persistently cached step sources are returned only if the step sources fail to load.
+   */
+  private fun getStepSources(stepIds: List<Int>): Result<List<HyperskillStepSource>, String> {
+    val userId = account?.userInfo?.id
+    val uniqueStepIds = stepIds.distinct()
+    val stepSources = HashMap(stepSourceCache.get(userId, uniqueStepIds))
+    val cached = courseStructureCache?.getStepSources(userId, uniqueStepIds.filter { it !in stepSources }).orEmpty()
+    for ((stepId, cachedStepSource) in cached) {
+      if (!cachedStepSource.isStale) {
+        stepSources[stepId] = cachedStepSource.value
+      }
+    }
+    val missingStepIds = uniqueStepIds.filter { it !in stepSources }
+    val loaded = fetchStepSources(missingStepIds).onError { error ->
+      if (!missingStepIds.all { it in cached }) return Err(error)
+      LOG.warn("Failed to reload steps $missingStepIds, the cached step sources are used: $error")
+      missingStepIds.map { cached.getValue(it).value }
+    }
+    loaded.associateByTo(stepSources) { it.id }
+    return Ok(uniqueStepIds.mapNotNull { stepSources[it] })
+  }
+
+  /**
+   * Loads step sources from the server in chunks of [STEP_IDS_CHUNK_SIZE] ids loaded concurrently
+   */
+  private fun fetchStepSources(stepIds: List<Int>): Result<List<HyperskillStepSource>, String> {
+    val userId = account?.userInfo?.id
+    val chunkLoadings = stepIds.distinct().chunked(STEP_IDS_CHUNK_SIZE).map { chunk ->
+      STEP_SOURCES_LOADING_EXECUTOR.submit(Callable { fetchStepSourcesChunk(userId, chunk) })
+    }
+    val stepSources = mutableListOf<HyperskillStepSource>()
+    try {
+      for (chunkLoading in chunkLoadings) {
+        val loaded = ProgressIndicatorUtils.awaitWithCheckCanceled(chunkLoading).onError { return Err(it) }
+        stepSourceCache.put(userId, loaded)
+        stepSources += loaded
+      }
+    }
+    finally {
+      chunkLoadings.forEach { it.cancel(true) }
+    }
+    return Ok(stepSources)
+  }
+
+  private fun fetchStepSourcesChunk(userId: Int?, stepIds: List<Int>): Result<List<HyperskillStepSource>, String> {
+    val ids = stepIds.joinToString(separator = ",")
+    return singleFlight("steps", ids) {
+      withPageIteration { page ->
+        hyperskillEndpoints.steps(ids, page).executeAndExtractFromBody()
+      }.flatMap { stepNodesLists ->
+        val stepNodes = stepNodesLists.flatMap { it.steps }
+        toStepSources(stepNodes).also { if (it is Ok) courseStructureCache?.putStepSources(userId, stepNodes) }
+      }
+    }
+  }
+
+  private fun toStepSources(stepNodes: List<ObjectNode>): Result<List<HyperskillStepSource>, String> {
+    return try {
+      Ok(stepNodes.map { objectMapper.treeToValue(it, HyperskillStepSource::class.java) })
+    }
+    catch (e: JsonProcessingException) {
+      LOG.warn("Failed to parse step sources", e)
+      Err(EduCoreBundle.message("error.failed.to.parse.response"))
+    }
+  }
 
   private fun getAdditionalFiles(projectId: Int): Result<CourseAdditionalInfo, String> {
-    return hyperskillEndpoints
-      .additionalFiles(projectId)
-      .executeAndExtractFromBody()
+    val cached = courseStructureCache?.getAdditionalInfo(account?.userInfo?.id, projectId)
+    return cachedOrFetched(cached, "additional files of project $projectId") { fetchAdditionalFiles(projectId) }
+  }
+
+  private fun fetchAdditionalFiles(projectId: Int): Result<CourseAdditionalInfo, String> {
+    val userId = account?.userInfo?.id
+    return singleFlight("additional-files", projectId) {
+      hyperskillEndpoints
+        .additionalFiles(projectId)
+        .executeAndExtractFromBody()
+    }.map { it.also { additionalInfo -> courseStructureCache?.putAdditionalInfo(userId, projectId, additionalInfo) } }
   }
 
-  fun getStepsForTopic(topic: Int): Result<List<HyperskillStepSource>, String> =
+  fun getStepsForTopic(topic: Int): Result<List<HyperskillStepSource>, String> = singleFlight("topic-steps", topic) {
     withPageIteration { page ->
       hyperskillEndpoints.steps(topic, page).executeAndExtractFromBody()
     }.flatMap { hyperskillStepsLists -> Ok(hyperskillStepsLists.flatMap { it.steps }) }
+  }
 
-  fun getStepSource(stepId: Int): Result<HyperskillStepSource, String> =
-    hyperskillEndpoints.steps(stepId.toString()).executeAndExtractFromBody().flatMap {
-      val result = it.steps.firstOrNull()
-      if (result == null) Err("Can't get step source with $stepId id") else Ok(result)
+  fun getStepSource(stepId: Int): Result<HyperskillStepSource, String> {
+    val userId = account?.userInfo?.id
+    stepSourceCache.get(userId, listOf(stepId))[stepId]?.let { return Ok(it) }
+    val cached = courseStructureCache?.getStepSources(userId, listOf(stepId))?.get(stepId)
+    return cachedOrFetched(cached, "step $stepId") { fetchStepSource(userId, stepId) }
+  }
+
+  private fun fetchStepSource(userId: Int?, stepId: Int): Result<HyperskillStepSource, String> {
+    return singleFlight("step", stepId) {
+      hyperskillEndpoints.steps(stepId.toString()).executeAndExtractFromBody().flatMap {
+        val stepNode = it.steps.firstOrNull()
+        if (stepNode == null) Err("Can't get step source with $stepId id")
+        else {
+          toStepSources(listOf(stepNode)).map { stepSources ->
+            courseStructureCache?.putStepSources(userId, listOf(stepNode))
+            stepSourceCache.put(userId, stepSources)
+            stepSources.single()
+          }
+        }
+      }
     }
+  }
 
-  fun getTaskToTopics(course: HyperskillCourse): MutableMap<Int, List<HyperskillTopic>> {
+  /**
+   * Loads topics of all the stages of the [course] concurrently.
+   *
+   * Stages whose topics failed to load are skipped, so the result may be partial.
+   * [onStageTopicsLoaded] is called from a background thread with the index of the stage and its topics as soon as they are loaded.
+   */
+  fun getTaskToTopics(
+    course: HyperskillCourse,
+    onStageTopicsLoaded: (Int, List<HyperskillTopic>) -> Unit = { _, _ -> }
+  ): MutableMap<Int, List<HyperskillTopic>> {
     val result = ConcurrentHashMap<Int, List<HyperskillTopic>>()
-    for ((taskIndex, stage) in course.stages.withIndex()) {
-      val topics = getAllTopics(stage)
-      if (topics.isEmpty()) continue
-      result[taskIndex] = topics
+    val progressIndicator = ProgressManager.getInstance().progressIndicator
+    val stageLoadings = course.stages.mapIndexed { taskIndex, stage ->
+      TOPICS_LOADING_EXECUTOR.submit(Runnable {
+        // don't start loading of the remaining stages if the whole loading is cancelled
+        if (progressIndicator?.isCanceled == true) return@Runnable
+        try {
+          val topics = getAllTopics(stage)
+          if (topics.isEmpty()) return@Runnable
+          result[taskIndex] = topics
+          onStageTopicsLoaded(taskIndex, topics)
+        }
+        catch (e: ProcessCanceledException) {
+          throw e
+        }
+        catch (e: Exception) {
+          LOG.warn("Failed to load topics for stage ${stage.id}", e)
+        }
+      })
+    }
+    try {
+      for (stageLoading in stageLoadings) {
+        ProgressIndicatorUtils.awaitWithCheckCanceled(stageLoading)
+      }
+    }
+    finally {
+      stageLoadings.forEach { it.cancel(true) }
     }
     return result
   }
 
   fun fillTopics(project: Project, course: HyperskillCourse) {
-    course.taskToTopics = getTaskToTopics(course)
+    // previously loaded topics are shown until the topics of their stage are loaded,
+    // and they are kept for the stages whose topics fail to load
+    val taskToTopics = ConcurrentHashMap(course.taskToTopics)
+    course.taskToTopics = taskToTopics
+    getTaskToTopics(course) { taskIndex, topics ->
+      taskToTopics[taskIndex] = topics
+      updateTopicsTab(project)
+    }
+    updateTopicsTab(project)
+  }
+
+  private fun updateTopicsTab(project: Project) {
     runInEdt {
       if (project.isDisposed) return@runInEdt
       TaskToolWindowView.getInstance(project).updateTab(TOPICS_TAB)
@@ -173,10 +360,51 @@ abstract class HyperskillConnector : EduOAuthCodeFlowConnector<HyperskillAccount
   }
 
   private fun getAllTopics(stage: HyperskillStage): List<HyperskillTopic> {
-    return withPageIteration { hyperskillEndpoints.topics(stage.id, it).executeAndExtractFromBody() }
-      .onError { return emptyList() }
-      .flatMap { it.topics }
-      .filter { it.theoryId != null }
+    val cached = courseStructureCache?.getTopics(account?.userInfo?.id, stage.id)
+    val topics = cachedOrFetched(cached, "topics of stage ${stage.id}") { fetchTopics(stage.id) }.onError { return emptyList() }
+    return topics.filter { it.theoryId != null }
+  }
+
+  private fun fetchTopics(stageId: Int): Result<List<HyperskillTopic>, String> {
+    val userId = account?.userInfo?.id
+    return singleFlight("topics", stageId) {
+      withPageIteration { hyperskillEndpoints.topics(stageId, it).executeAndExtractFromBody() }
+    }.map { topicsLists ->
+      topicsLists.flatMap { it.topics }.also { courseStructureCache?.putTopics(userId, stageId, it) }
+    }
+  }
+
+  /**
+   * Reloads the stale entries of the [course] structure in [courseStructureCache] from the server.
+   * Entries that failed to reload are kept, so the course can still be opened offline.
+   * Entries that aren't cached yet are loaded on demand.
+   */
+  fun syncCourseStructure(course: HyperskillCourse) {
+    val cache = courseStructureCache ?: return
+    val userId = account?.userInfo?.id
+    val projectId = course.hyperskillProject?.id
+
+    fun Result<*, String>.logFailure(item: String) = onError { LOG.warn("Failed to sync $item: $it") }
+
+    if (projectId != null) {
+      if (cache.getProject(userId, projectId)?.isStale == true) {
+        fetchProject(projectId).logFailure("project $projectId")
+      }
+      if (cache.getStages(userId, projectId)?.isStale == true) {
+        fetchStages(projectId).logFailure("stages of project $projectId")
+      }
+      if (cache.getAdditionalInfo(userId, projectId)?.isStale == true) {
+        fetchAdditionalFiles(projectId).logFailure("additional files of project $projectId")
+      }
+    }
+    for (stage in course.stages) {
+      if (cache.getTopics(userId, stage.id)?.isStale == true) {
+        fetchTopics(stage.id).logFailure("topics of stage ${stage.id}")
+      }
+    }
+    val stepIds = course.stages.map { it.stepId } + course.allTasks.map { it.id }
+    val staleStepIds = cache.getStepSources(userId, stepIds).filterValues { it.isStale }.keys
+    fetchStepSources(staleStepIds.toList()).logFailure("steps $staleStepIds")
   }
 
   fun getLesson(course: HyperskillCourse): Lesson? {
@@ -275,8 +503,8 @@ abstract class HyperskillConnector : EduOAuthCodeFlowConnector<HyperskillAccount
     return withTokenRefreshIfFailed { hyperskillEndpoints.submission(id).executeAndExtractFirst(SubmissionsList::submissions) }
   }
 
-  fun getUser(userId: Int): Result<User, String> {
-    return hyperskillEndpoints.user(userId).executeAndExtractFirst(UsersList::users)
+  fun getUser(userId: Int): Result<User, String> = singleFlight("user", userId) {
+    hyperskillEndpoints.user(userId).executeAndExtractFirst(UsersList::users)
   }
 
   override fun getActiveAttempt(task: Task): Result<Attempt?, String> {
@@ -321,6 +549,15 @@ abstract class HyperskillConnector : EduOAuthCodeFlowConnector<HyperskillAccount
     return withTokenRefreshIfFailed { hyperskillEndpoints.sendTimeSpentEvents(events).executeParsingErrors() }
   }
 
+  /**
+   * Runs the [request] or, if an identical request of the same user is already running, waits for its result.
+   * [endpoint] and [parameters] must identify the request, and requests with the same [endpoint] must return results of the same type.
+   */
+  private fun <T> singleFlight(endpoint: String, vararg parameters: Any, request: () -> Result<T, String>): Result<T, String> {
+    val key = listOf(account?.userInfo?.id, endpoint, *parameters)
+    return inFlightRequests.execute(key, request)
+  }
+
   private fun <T> Call<T>.executeAndExtractFromBody(): Result<T, String> {
     return executeParsingErrors(true).flatMap {
       val result = it.body()
@@ -328,12 +565,22 @@ abstract class HyperskillConnector : EduOAuthCodeFlowConnector<HyperskillAccount
     }
   }
 
-  fun connectToWebSocketWithTimeout(timeOutSec: Long, url: String, initialState: WebSocketConnectionState): WebSocketConnectionState {
+  /**
+   * Handles messages of the socket at [url] by [initialState] and its successors,
+   * until a terminal state is reached, the socket is closed, [timeOutSec] expires or [stopSignal] is completed
+   */
+  fun connectToWebSocketWithTimeout(
+    timeOutSec: Long,
+    url: String,
+    initialState: WebSocketConnectionState,
+    stopSignal: CompletableFuture<*>? = null
+  ): WebSocketConnectionState {
 
     fun logEvent(eventName: String, state: WebSocketConnectionState, message: String) =
       LOG.debug("WS: new event. Event=$eventName, state=${state::class.java.simpleName}, message=${message}")
 
-    val client = OkHttpClient()
+    // the socket reader runs on the dispatcher threads, so it gets its own dispatcher to be shut down with the socket
+    val client = sharedOkHttpClient.newBuilder().dispatcher(Dispatcher()).build()
     val latch = CountDownLatch(1)
     var state = initialState
     val socket = createWebSocket(client, url, object : WebSocketListener() {
@@ -370,6 +617,7 @@ abstract class HyperskillConnector : EduOAuthCodeFlowConnector<HyperskillAccount
       }
     })
 
+    stopSignal?.whenComplete { _, _ -> latch.countDown() }
     latch.await(timeOutSec, TimeUnit.SECONDS)
     socket.close(1000, null)
     client.dispatcher.executorService.shutdown()
@@ -398,6 +646,12 @@ abstract class HyperskillConnector : EduOAuthCodeFlowConnector<HyperskillAccount
 
     private val CLIENT_ID: String = HyperskillOAuthBundle.value("hyperskillClientId")
 
+    private val TOPICS_LOADING_EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor("Hyperskill Topics Loader", 4)
+    private val STEP_SOURCES_LOADING_EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor("Hyperskill Steps Loader", 4)
+
+    private const val STEP_IDS_CHUNK_SIZE = 50
+    private val STEP_SOURCES_CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(5)
+
     fun getInstance(): HyperskillConnector = service()
 
     /**
@@ -0,0 +1,182 @@
+package org.hyperskill.academy.learning.stepik.hyperskill.api
+
+import com.fasterxml.jackson.databind.JavaType
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.util.registry.Registry
+import com.intellij.util.concurrency.AppExecutorUtil
+import org.hyperskill.academy.learning.courseFormat.EduFormatNames.ID
+import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillProject
+import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillStage
+import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillTopic
+import org.hyperskill.academy.learning.stepik.api.CourseAdditionalInfo
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.TimeUnit
+
+/**
+ * Persistent cache of the structure of Hyperskill projects: projects, their stages and additional files,
+ * topics of the stages and step sources.
+ *
+ * Every entry is stored in its own JSON file under [directory] together with the time it was loaded from the server,
+ * so projects can be created and navigated without network access.
+ * Entries older than [maxAgeMillis] are still returned, but they are marked as stale,
+ * so [HyperskillConnector] reloads them from the server and uses them only if they fail to reload.
+ * Entries that weren't updated for a long time are deleted by [evictUnusedEntries].
+ *
+ * Stages and step sources contain the progress of the user, so every user has a separate directory.
+ */
+class HyperskillCourseStructureCache(
+  private val directory: Path,
+  private val objectMapper: ObjectMapper,
+  private val maxAgeMillis: Long,
+  private val currentTimeMillis: () -> Long = System::currentTimeMillis
+) {
+  class CachedValue<T>(val value: T, val updatedAt: Long, val isStale: Boolean)
+
+  private val stagesType: JavaType = objectMapper.typeFactory.constructCollectionType(List::class.java, HyperskillStage::class.java)
+  private val topicsType: JavaType = objectMapper.typeFactory.constructCollectionType(List::class.java, HyperskillTopic::class.java)
+
+  fun getProject(userId: Int?, projectId: Int): CachedValue<HyperskillProject>? =
+    read(userId, "project-$projectId", objectMapper.constructType(HyperskillProject::class.java))
+
+  fun putProject(userId: Int?, project: HyperskillProject) {
+    write(userId, "project-${project.id}", objectMapper.valueToTree(project))
+  }
+
+  fun getStages(userId: Int?, projectId: Int): CachedValue<List<HyperskillStage>>? = read(userId, "stages-$projectId", stagesType)
+
+  fun putStages(userId: Int?, projectId: Int, stages: List<HyperskillStage>) {
+    write(userId, "stages-$projectId", objectMapper.valueToTree(stages))
+  }
+
+  fun getAdditionalInfo(userId: Int?, projectId: Int): CachedValue<CourseAdditionalInfo>? =
+    read(userId, "additional-files-$projectId", objectMapper.constructType(CourseAdditionalInfo::class.java))
+
+  fun putAdditionalInfo(userId: Int?, projectId: Int, additionalInfo: CourseAdditionalInfo) {
+    write(userId, "additional-files-$projectId", objectMapper.valueToTree(additionalInfo))
+  }
+
+  fun getTopics(userId: Int?, stageId: Int): CachedValue<List<HyperskillTopic>>? = read(userId, "topics-$stageId", topicsType)
+
+  fun putTopics(userId: Int?, stageId: Int, topics: List<HyperskillTopic>) {
+    write(userId, "topics-$stageId", objectMapper.valueToTree(topics))
+  }
+
+  fun getStepSources(userId: Int?, stepIds: Collection<Int>): Map<Int, CachedValue<HyperskillStepSource>> {
+    val stepSourceType = objectMapper.constructType(HyperskillStepSource::class.java)
+    return stepIds.distinct()
+      .mapNotNull { stepId -> read<HyperskillStepSource>(userId, "step-$stepId", stepSourceType)?.let { stepId to it } }
+      .toMap()
+  }
+
+  /**
+   * Stores step sources as they are received from the server.
+   * Serialized [HyperskillStepSource]s can't be stored instead, because their step options are written in another format.
+   */
+  fun putStepSources(userId: Int?, stepSources: Collection<JsonNode>) {
+    for (stepSource in stepSources) {
+      val stepId = stepSource.get(ID)?.asInt() ?: continue
+      write(userId, "step-$stepId", stepSource)
+    }
+  }
+
+  private fun <T> read(userId: Int?, key: String, type: JavaType): CachedValue<T>? {
+    val file = entryFile(userId, key)
+    if (!Files.exists(file)) return null
+    return try {
+      val entry = objectMapper.readTree(file.toFile())
+      val updatedAt = entry.get(UPDATED_AT)?.asLong() ?: return null
+      val value = objectMapper.readerFor(type).readValue<T>(entry.get(VALUE) ?: return null)
+      CachedValue(value, updatedAt, currentTimeMillis() - updatedAt >= maxAgeMillis)
+    }
+    catch (e: IOException) {
+      LOG.warn("Failed to read cached $key", e)
+      null
+    }
+  }
+
+  private fun write(userId: Int?, key: String, value: JsonNode) {
+    val entry = objectMapper.createObjectNode()
+    entry.put(UPDATED_AT, currentTimeMillis())
+    entry.set<JsonNode>(VALUE, value)
+    val file = entryFile(userId, key)
+    try {
+      Files.createDirectories(file.parent)
+      // concurrent readers must never see a partially written file
+      val tempFile = Files.createTempFile(file.parent, key, ".tmp")
+      try {
+        objectMapper.writeValue(tempFile.toFile(), entry)
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+      }
+      finally {
+        Files.deleteIfExists(tempFile)
+      }
+    }
+    catch (e: IOException) {
+      LOG.warn("Failed to cache $key", e)
+    }
+  }
+
+  /**
+   * Deletes the entries that weren't updated for [maxRetentionMillis],
+   * so that entries of projects and users that aren't used anymore don't stay on the disk forever
+   */
+  fun evictUnusedEntries(maxRetentionMillis: Long) {
+    if (!Files.isDirectory(directory)) return
+    val threshold = currentTimeMillis() - maxRetentionMillis
+    try {
+      Files.newDirectoryStream(directory).use { userDirs ->
+        for (userDir in userDirs) {
+          if (!Files.isDirectory(userDir)) continue
+          Files.newDirectoryStream(userDir).use { entries ->
+            for (entry in entries) {
+              if (Files.getLastModifiedTime(entry).toMillis() < threshold) {
+                Files.deleteIfExists(entry)
+              }
+            }
+          }
+          Files.newDirectoryStream(userDir).use { entries ->
+            if (!entries.iterator().hasNext()) Files.deleteIfExists(userDir)
+          }
+        }
+      }
+    }
+    catch (e: IOException) {
+      LOG.warn("Failed to evict unused entries of the course structure cache", e)
+    }
+  }
+
+  private fun entryFile(userId: Int?, key: String): Path = directory.resolve(userId?.toString() ?: ANONYMOUS_USER_DIR).resolve("$key.json")
+
+  companion object {
+    private val LOG = logger<HyperskillCourseStructureCache>()
+
+    private const val UPDATED_AT = "updated_at"
+    private const val VALUE = "value"
+    private const val ANONYMOUS_USER_DIR = "anonymous"
+
+    private const val CACHE_DIR_NAME = "hyperskill-course-cache"
+    private const val MAX_AGE_REGISTRY_KEY = "hyperskill.course.cache.max.age.minutes"
+    private const val DEFAULT_MAX_AGE_MINUTES = 5
+    private const val MAX_RETENTION_DAYS = 30L
+
+    /**
+     * Creates the cache in the IDE system directory, or returns `null` if the cache is disabled in the registry.
+     * Unused entries of the cache are evicted in background.
+     */
+    fun create(objectMapper: ObjectMapper): HyperskillCourseStructureCache? {
+      val maxAgeMinutes = Registry.intValue(MAX_AGE_REGISTRY_KEY, DEFAULT_MAX_AGE_MINUTES)
+      if (maxAgeMinutes < 0) return null
+      val directory = Paths.get(PathManager.getSystemPath(), CACHE_DIR_NAME)
+      val cache = HyperskillCourseStructureCache(directory, objectMapper, TimeUnit.MINUTES.toMillis(maxAgeMinutes.toLong()))
+      AppExecutorUtil.getAppExecutorService().execute { cache.evictUnusedEntries(TimeUnit.DAYS.toMillis(MAX_RETENTION_DAYS)) }
+      return cache
+    }
+  }
+}
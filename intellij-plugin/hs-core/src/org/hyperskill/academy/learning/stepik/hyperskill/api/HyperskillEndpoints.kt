@@ -1,6 +1,7 @@
 package org.hyperskill.academy.learning.stepik.hyperskill.api
 
 import okhttp3.ResponseBody
+import org.hyperskill.academy.learning.network.NO_HTTP_CACHE
 import org.hyperskill.academy.learning.courseFormat.attempts.Attempt
 import org.hyperskill.academy.learning.stepik.StepikNames
 import org.hyperskill.academy.learning.stepik.api.AttemptsList
@@ -12,6 +13,7 @@ import retrofit2.http.*
 
 interface HyperskillEndpoints {
   @GET("api/profiles/current")
+  @Headers(NO_HTTP_CACHE)
   fun getCurrentUserInfo(): Call<ProfilesList>
 
   @GET("api/stages")
@@ -25,18 +27,19 @@ interface HyperskillEndpoints {
     @Query("ids", encoded = true) ids: String,
     @Query("page") page: Int,
     @Query("page_size") pageSize: Int = 100
-  ): Call<HyperskillStepsList>
+  ): Call<HyperskillStepNodesList>
 
   @GET("api/steps")
   fun steps(@Query("topic") topic: Int, @Query("page") page: Int, @Query("page_size") pageSize: Int = 100): Call<HyperskillStepsList>
 
   @GET("api/steps")
-  fun steps(@Query("ids", encoded = true) ids: String): Call<HyperskillStepsList>
+  fun steps(@Query("ids", encoded = true) ids: String): Call<HyperskillStepNodesList>
 
   @GET("api/projects/{id}/additional-files/${StepikNames.ADDITIONAL_INFO}")
   fun additionalFiles(@Path("id") id: Int): Call<CourseAdditionalInfo>
 
   @GET("api/submissions")
+  @Headers(NO_HTTP_CACHE)
   fun submissions(
     @Query("user") user: Int,
     @Query("step", encoded = true) step: String,
@@ -45,6 +48,7 @@ interface HyperskillEndpoints {
   ): Call<SubmissionsList>
 
   @GET("api/submissions/{id}")
+  @Headers(NO_HTTP_CACHE)
   fun submission(@Path("id") submissionId: Int): Call<SubmissionsList>
 
   @GET("api/projects/{id}")
@@ -54,6 +58,7 @@ interface HyperskillEndpoints {
   fun user(@Path("id") id: Int): Call<UsersList>
 
   @GET("api/attempts")
+  @Headers(NO_HTTP_CACHE)
   fun attempts(
     @Query("step") stepId: Int,
     @Query("user") userId: Int,
@@ -62,6 +67,7 @@ interface HyperskillEndpoints {
   ): Call<AttemptsList>
 
   @GET("api/attempts/{dataset_id}/dataset")
+  @Headers(NO_HTTP_CACHE)
   fun dataset(@Path("dataset_id") datasetId: Int): Call<ResponseBody>
 
   @POST("api/attempts")
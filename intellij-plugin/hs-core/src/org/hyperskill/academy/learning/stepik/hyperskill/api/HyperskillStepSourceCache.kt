@@ -0,0 +1,60 @@
+package org.hyperskill.academy.learning.stepik.hyperskill.api
+
+/**
+ * Short-lived in-memory cache of [HyperskillStepSource]s by step ids.
+ *
+ * Step sources contain per-user data like [HyperskillStepSource.isCompleted],
+ * so the cache belongs to a single user and is cleared when step sources of another user are stored.
+ * Entries expire after [ttlMillis], so the course update checks still see the changes made on the server.
+ */
+class HyperskillStepSourceCache(
+  private val ttlMillis: Long,
+  private val currentTimeMillis: () -> Long = System::currentTimeMillis
+) {
+  private class Entry(val stepSource: HyperskillStepSource, val loadedAt: Long)
+
+  private val entries = HashMap<Int, Entry>()
+  private var userId: Int? = null
+
+  /**
+   * Returns not expired step sources of the [userId] with the given [stepIds]
+   */
+  fun get(userId: Int?, stepIds: Collection<Int>): Map<Int, HyperskillStepSource> {
+    if (ttlMillis <= 0) return emptyMap()
+    val now = currentTimeMillis()
+    synchronized(entries) {
+      if (userId != this.userId) return emptyMap()
+      val result = HashMap<Int, HyperskillStepSource>()
+      for (stepId in stepIds) {
+        val entry = entries[stepId] ?: continue
+        if (now - entry.loadedAt < ttlMillis) {
+          result[stepId] = entry.stepSource
+        }
+        else {
+          entries.remove(stepId)
+        }
+      }
+      return result
+    }
+  }
+
+  fun put(userId: Int?, stepSources: Collection<HyperskillStepSource>) {
+    if (ttlMillis <= 0) return
+    val now = currentTimeMillis()
+    synchronized(entries) {
+      if (userId != this.userId) {
+        entries.clear()
+        this.userId = userId
+      }
+      for (stepSource in stepSources) {
+        entries[stepSource.id] = Entry(stepSource, now)
+      }
+    }
+  }
+
+  fun clear() {
+    synchronized(entries) {
+      entries.clear()
+    }
+  }
+}
@@ -4,6 +4,7 @@ package org.hyperskill.academy.learning.stepik.hyperskill.api
 
 import com.fasterxml.jackson.annotation.JsonFormat
 import com.fasterxml.jackson.annotation.JsonProperty
+import com.fasterxml.jackson.databind.node.ObjectNode
 import com.intellij.openapi.application.ApplicationNamesInfo
 import com.intellij.openapi.application.impl.ApplicationInfoImpl
 import com.intellij.openapi.project.Project
@@ -213,6 +214,14 @@ class HyperskillStepsList : WithPaginationMetaData() {
   lateinit var steps: List<HyperskillStepSource>
 }
 
+/**
+ * Steps as they are received from the server, to be stored in [HyperskillCourseStructureCache]
+ */
+class HyperskillStepNodesList : WithPaginationMetaData() {
+  @JsonProperty(STEPS)
+  lateinit var steps: List<ObjectNode>
+}
+
 class SolutionsList {
   @JsonProperty(SOLUTIONS)
   lateinit var solutions: List<Solution>
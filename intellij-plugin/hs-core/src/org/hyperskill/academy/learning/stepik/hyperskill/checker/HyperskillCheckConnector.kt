@@ -4,6 +4,7 @@ import com.intellij.notification.NotificationAction
 import com.intellij.notification.NotificationType.ERROR
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils
 import com.intellij.openapi.util.text.StringUtil
 import com.intellij.util.text.nullize
 import org.hyperskill.academy.learning.*
@@ -50,20 +51,29 @@ object HyperskillCheckConnector {
     else -> false
   }
 
-  private fun periodicallyCheckSubmissionResult(project: Project, submission: StepikBasedSubmission, task: Task): CheckResult {
+  private fun createSubmissionResultPoller(task: Task): SubmissionResultPoller {
     require(isRemotelyChecked(task)) { "Task is not checked remotely" }
-
-    val submissionId = submission.id ?: error("Submission must have id")
-    val connector = task.getStepikBasedConnector()
-
-    var lastSubmission = submission
-    var delay = 1L
     val timeout = if (isUnitTestMode) 5L else CODE_TASK_CHECK_TIMEOUT
-    while (delay < timeout && lastSubmission.status == EVALUATION_STATUS) {
-      TimeUnit.SECONDS.sleep(delay)
-      delay *= 2
-      lastSubmission = connector.getSubmission(submissionId).onError { return it.toCheckResult() }
+    return SubmissionResultPoller(task.getStepikBasedConnector()::getSubmission, TimeUnit.SECONDS.toMillis(timeout))
+  }
+
+  private fun periodicallyCheckSubmissionResult(project: Project, submission: StepikBasedSubmission, task: Task): CheckResult {
+    val poller = createSubmissionResultPoller(task)
+    try {
+      poller.start(submission)
+      return waitForSubmissionResult(project, task, poller)
     }
+    finally {
+      poller.cancel()
+    }
+  }
+
+  /**
+   * Waits until [poller] gets the result of the submission or the check is cancelled
+   */
+  private fun waitForSubmissionResult(project: Project, task: Task, poller: SubmissionResultPoller): CheckResult {
+    val connector = task.getStepikBasedConnector()
+    val lastSubmission = ProgressIndicatorUtils.awaitWithCheckCanceled(poller.result).onError { return it.toCheckResult() }
 
     if (lastSubmission.status != EVALUATION_STATUS) {
       if (task.supportSubmissions) {
@@ -109,18 +119,27 @@ object HyperskillCheckConnector {
     return Ok(files)
   }
 
-  private fun checkCodeTaskWithWebSockets(project: Project, task: CodeTask): Result<CheckResult, SubmissionError> {
+  /**
+   * The result of the submission made via web sockets is polled at the same time,
+   * and the socket is closed as soon as [poller] gets it
+   */
+  private fun checkCodeTaskWithWebSockets(
+    project: Project,
+    task: CodeTask,
+    poller: SubmissionResultPoller
+  ): Result<CheckResult, SubmissionError> {
     val connector = HyperskillConnector.getInstance()
     val webSocketConfiguration = connector.getWebSocketConfiguration().onError { error ->
       return Err(SubmissionError.NoSubmission(error))
     }
 
-    val initialState = InitialState(project, task, webSocketConfiguration.token)
+    val initialState = InitialState(project, task, webSocketConfiguration.token, poller::start)
     // TODO: remove `cf_protocol_version=v2` after full transfer to the cf protocol version 2 (~Summer 2023).
     val finalState = connector.connectToWebSocketWithTimeout(
       CODE_TASK_CHECK_TIMEOUT,
       "wss://${getWebsocketHostName()}/ws/connection/websocket?cf_protocol_version=v2",
-      initialState
+      initialState,
+      poller.result
     )
 
     return finalState.getResult()
@@ -141,17 +160,28 @@ object HyperskillCheckConnector {
       return checkIdResult
     }
 
-    return checkCodeTaskWithWebSockets(project, task).onError { submissionError ->
-      LOG.info(submissionError.error)
-      val submission = when (submissionError) {
-        is SubmissionError.NoSubmission -> HyperskillSubmitConnector.submitCodeTask(project, task).onError { error ->
-          return failedToSubmit(project, task, error)
+    val poller = createSubmissionResultPoller(task)
+    // the result can still be received via web sockets, so failed polls must not fail the check
+    poller.toleratesPollErrors = true
+    try {
+      return checkCodeTaskWithWebSockets(project, task, poller).onError { submissionError ->
+        LOG.info(submissionError.error)
+        val submission = when (submissionError) {
+          is SubmissionError.NoSubmission -> HyperskillSubmitConnector.submitCodeTask(project, task).onError { error ->
+            return failedToSubmit(project, task, error)
+          }
+
+          is SubmissionError.WithSubmission -> submissionError.submission
         }
 
-        is SubmissionError.WithSubmission -> submissionError.submission
+        // does nothing if the submission made via web sockets is already polled
+        poller.toleratesPollErrors = false
+        poller.start(submission)
+        return waitForSubmissionResult(project, task, poller)
       }
-
-      return periodicallyCheckSubmissionResult(project, submission, task)
+    }
+    finally {
+      poller.cancel()
     }
   }
 
@@ -0,0 +1,117 @@
+package org.hyperskill.academy.learning.stepik.hyperskill.checker
+
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.util.concurrency.AppExecutorUtil
+import org.hyperskill.academy.learning.Err
+import org.hyperskill.academy.learning.Ok
+import org.hyperskill.academy.learning.Result
+import org.hyperskill.academy.learning.onError
+import org.hyperskill.academy.learning.stepik.api.StepikBasedSubmission
+import org.hyperskill.academy.learning.stepik.hyperskill.checker.HyperskillCheckConnector.EVALUATION_STATUS
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Polls the status of a submission until it's evaluated.
+ *
+ * Polls are scheduled on [scheduler], so no thread is blocked between them.
+ * The delay before a poll starts from [initialDelayMillis] and is doubled after every poll up to [maxDelayMillis].
+ * Every delay is jittered, so that clients which submitted at the same time don't poll in lockstep.
+ *
+ * [result] is completed with the first polled submission whose status is final, with an error if a poll fails,
+ * or with the last polled submission, still being evaluated, when [timeoutMillis] expires.
+ * While [toleratesPollErrors] is set, failed polls are only logged and retried instead.
+ */
+class SubmissionResultPoller(
+  private val getSubmission: (Int) -> Result<StepikBasedSubmission, String>,
+  private val timeoutMillis: Long,
+  private val scheduler: ScheduledExecutorService = AppExecutorUtil.getAppScheduledExecutorService(),
+  private val initialDelayMillis: Long = INITIAL_DELAY_MS,
+  private val maxDelayMillis: Long = MAX_DELAY_MS,
+  private val currentTimeMillis: () -> Long = System::currentTimeMillis,
+  private val jitter: (Long) -> Long = { delay -> delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1) }
+) {
+  val result: CompletableFuture<Result<StepikBasedSubmission, String>> = CompletableFuture()
+
+  /**
+   * Should be set while the result can still be received in another way, e.g. via web sockets,
+   * so that a transient failure of a poll doesn't fail the whole check
+   */
+  @Volatile
+  var toleratesPollErrors: Boolean = false
+
+  private val isStarted = AtomicBoolean()
+  private var deadline = 0L
+
+  @Volatile
+  private var scheduledPoll: ScheduledFuture<*>? = null
+
+  /**
+   * Starts polling the status of [submission]. Subsequent calls are ignored
+   */
+  fun start(submission: StepikBasedSubmission) {
+    if (!isStarted.compareAndSet(false, true)) return
+    if (submission.status != EVALUATION_STATUS) {
+      result.complete(Ok(submission))
+      return
+    }
+    val submissionId = submission.id ?: error("Submission must have id")
+    deadline = currentTimeMillis() + timeoutMillis
+    schedulePoll(submissionId, submission, initialDelayMillis)
+  }
+
+  /**
+   * Stops polling. [result] is cancelled unless it's already completed
+   */
+  fun cancel() {
+    result.cancel(false)
+    scheduledPoll?.cancel(false)
+  }
+
+  private fun schedulePoll(submissionId: Int, lastSubmission: StepikBasedSubmission, delayMillis: Long) {
+    val remainingMillis = deadline - currentTimeMillis()
+    if (remainingMillis <= 0) {
+      result.complete(Ok(lastSubmission))
+      return
+    }
+    // the last poll is sent right at the deadline, so a result evaluated just before it isn't missed
+    val pollDelayMillis = jitter(delayMillis).coerceIn(0, remainingMillis)
+    scheduledPoll = scheduler.schedule({ poll(submissionId, lastSubmission, delayMillis) }, pollDelayMillis, TimeUnit.MILLISECONDS)
+  }
+
+  private fun poll(submissionId: Int, lastSubmission: StepikBasedSubmission, delayMillis: Long) {
+    if (result.isDone) return
+    val nextDelayMillis = (delayMillis * 2).coerceAtMost(maxDelayMillis)
+    try {
+      val submission = getSubmission(submissionId).onError { error ->
+        if (toleratesPollErrors) {
+          LOG.info("Failed to poll the status of submission $submissionId, the poll is retried: $error")
+          schedulePoll(submissionId, lastSubmission, nextDelayMillis)
+        }
+        else {
+          result.complete(Err(error))
+        }
+        return
+      }
+      if (submission.status != EVALUATION_STATUS) {
+        result.complete(Ok(submission))
+        return
+      }
+      schedulePoll(submissionId, submission, nextDelayMillis)
+    }
+    catch (e: Exception) {
+      result.completeExceptionally(e)
+    }
+  }
+
+  companion object {
+    private val LOG = logger<SubmissionResultPoller>()
+
+    private const val INITIAL_DELAY_MS = 1000L
+    private const val MAX_DELAY_MS = 5000L
+  }
+}
@@ -40,25 +40,45 @@ abstract class WebSocketConnectionState(protected val project: Project, protecte
   }
 }
 
-class InitialState(project: Project, task: CodeTask, private val token: String) : WebSocketConnectionState(project, task) {
+/**
+ * @param onSubmitted is called as soon as the submission is made, so its result can also be polled while the socket is listened to
+ */
+class InitialState(
+  project: Project,
+  task: CodeTask,
+  private val token: String,
+  private val onSubmitted: (StepikBasedSubmission) -> Unit = {}
+) : WebSocketConnectionState(project, task) {
   override fun handleEvent(webSocket: WebSocket, message: String): WebSocketConnectionState {
     webSocket.send(OpenMessage(token))
-    return WaitingForConnectionState(project, task)
+    return WaitingForConnectionState(project, task, onSubmitted)
   }
 }
 
-private class WaitingForConnectionState(project: Project, task: CodeTask) : WebSocketConnectionState(project, task) {
+private class WaitingForConnectionState(
+  project: Project,
+  task: CodeTask,
+  private val onSubmitted: (StepikBasedSubmission) -> Unit
+) : WebSocketConnectionState(project, task) {
   override fun handleEvent(webSocket: WebSocket, message: String): WebSocketConnectionState {
     webSocket.send(SubscribeToSubmissionsMessage(HyperskillSettings.INSTANCE.account!!.userInfo.id))
-    return WaitingForSubscriptionState(project, task)
+    return WaitingForSubscriptionState(project, task, onSubmitted)
   }
 }
 
 
-private class WaitingForSubscriptionState(project: Project, task: CodeTask) : WebSocketConnectionState(project, task) {
+private class WaitingForSubscriptionState(
+  project: Project,
+  task: CodeTask,
+  private val onSubmitted: (StepikBasedSubmission) -> Unit
+) : WebSocketConnectionState(project, task) {
   override fun handleEvent(webSocket: WebSocket, message: String): WebSocketConnectionState {
     return when (val result: Result<StepikBasedSubmission, String> = HyperskillSubmitConnector.submitCodeTask(project, task)) {
-      is Ok -> ReceivingSubmissionsState(project, task, result.value)
+      is Ok -> {
+        onSubmitted(result.value)
+        ReceivingSubmissionsState(project, task, result.value)
+      }
+
       is Err -> ErrorState(project, task)
     }
   }
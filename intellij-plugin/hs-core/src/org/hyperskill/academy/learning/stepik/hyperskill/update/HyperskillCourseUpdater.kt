@@ -77,6 +77,8 @@ class HyperskillCourseUpdater(private val project: Project, val course: Hyperski
       return problemLessons.flatMap { lesson -> lesson.getProblemsUpdates() }
     }
     runInBackground(project, EduCoreBundle.message("update.check")) {
+      // the course from the server is built from the cached structure, so it must be up to date
+      HyperskillConnector.getInstance().syncCourseStructure(course)
       val projectLesson = course.getProjectLesson()
       val courseFromServer = course.hyperskillProject?.getCourseFromServer()
       val hyperskillProject = course.hyperskillProject
@@ -0,0 +1,196 @@
+package org.hyperskill.academy.learning.storage
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Keeps the most recently loaded values of the [delegate] storage in memory.
+ * The total size of the cached values is limited by [maxWeight] bytes, the least recently used values are evicted first.
+ *
+ * Textual values are cached together with their decoded text, see [loadText].
+ * Cached values of a key are invalidated when the key is stored.
+ * Loaded byte arrays are copied, so that callers can't modify the cached values.
+ */
+class CachingLearningObjectsStorage(
+  private val delegate: LearningObjectsStorage,
+  private val maxWeight: Long
+) : LearningObjectsStorage {
+
+  private class Entry(val bytes: ByteArray) {
+    @Volatile
+    var text: String? = null
+
+    val weight: Long
+      get() = bytes.size.toLong() + 2L * (text?.length ?: 0)
+  }
+
+  // access ordered map, so that the iteration starts from the least recently used entry
+  private val entries = LinkedHashMap<String, Entry>(16, 0.75f, true)
+  private var currentWeight = 0L
+
+  // loads in flight by key, so that values loaded concurrently with `store` of the same key are not cached
+  private val pendingLoads = HashMap<String, PendingLoad>()
+  private val pendingPrefixLoads = mutableListOf<PendingPrefixLoad>()
+
+  private val hitCounter = AtomicLong()
+  private val missCounter = AtomicLong()
+
+  val hits: Long get() = hitCounter.get()
+  val misses: Long get() = missCounter.get()
+  val weight: Long get() = synchronized(entries) { currentWeight }
+
+  override val writeTextInYaml: Boolean
+    get() = delegate.writeTextInYaml
+
+  override fun load(key: String): ByteArray = getOrLoad(key).bytes.copyOf()
+
+  override fun loadText(key: String): String {
+    val entry = getOrLoad(key)
+    entry.text?.let { return it }
+
+    val text = String(entry.bytes)
+    synchronized(entries) {
+      // the entry could have been invalidated or evicted while the text was decoded
+      if (entries[key] === entry && entry.text == null) {
+        currentWeight -= entry.weight
+        entry.text = text
+        currentWeight += entry.weight
+        evictIfNeeded()
+      }
+    }
+    return text
+  }
+
+  /**
+   * Always loads the values from the [delegate] with a single call and puts them into the cache.
+   */
+  override fun loadAll(prefix: String): Map<String, ByteArray> {
+    val pendingLoad = PendingPrefixLoad(prefix)
+    synchronized(entries) { pendingPrefixLoads += pendingLoad }
+    val values = try {
+      delegate.loadAll(prefix)
+    }
+    catch (e: Throwable) {
+      synchronized(entries) { pendingPrefixLoads -= pendingLoad }
+      throw e
+    }
+    synchronized(entries) {
+      pendingPrefixLoads -= pendingLoad
+      for ((key, value) in values) {
+        if (key !in pendingLoad.invalidatedKeys) {
+          putEntry(key, Entry(value.copyOf()))
+        }
+      }
+    }
+    return values
+  }
+
+  override fun store(key: String, value: ByteArray) {
+    invalidate(key)
+    delegate.store(key, value)
+    invalidate(key)
+  }
+
+  override fun storeAll(values: Map<String, ByteArray>) {
+    values.keys.forEach(::invalidate)
+    delegate.storeAll(values)
+    values.keys.forEach(::invalidate)
+  }
+
+  private fun getOrLoad(key: String): Entry {
+    val (pendingLoad, invalidationsBeforeLoad) = synchronized(entries) {
+      entries[key]?.let {
+        hitCounter.incrementAndGet()
+        return it
+      }
+      val pendingLoad = pendingLoads.getOrPut(key) { PendingLoad() }
+      pendingLoad.count++
+      pendingLoad to pendingLoad.invalidations
+    }
+    missCounter.incrementAndGet()
+
+    val entry = try {
+      Entry(delegate.load(key))
+    }
+    catch (e: Throwable) {
+      synchronized(entries) { finishLoad(key, pendingLoad) }
+      throw e
+    }
+    synchronized(entries) {
+      if (pendingLoad.invalidations == invalidationsBeforeLoad) {
+        putEntry(key, entry)
+      }
+      finishLoad(key, pendingLoad)
+    }
+    return entry
+  }
+
+  // must be called under the lock
+  private fun finishLoad(key: String, pendingLoad: PendingLoad) {
+    if (--pendingLoad.count == 0) {
+      pendingLoads.remove(key)
+    }
+  }
+
+  // must be called under the lock
+  private fun putEntry(key: String, entry: Entry) {
+    val previous = entries.put(key, entry)
+    if (previous != null) {
+      currentWeight -= previous.weight
+    }
+    currentWeight += entry.weight
+    evictIfNeeded()
+  }
+
+  private fun invalidate(key: String) {
+    synchronized(entries) {
+      pendingLoads[key]?.let { it.invalidations++ }
+      for (pendingLoad in pendingPrefixLoads) {
+        if (key.startsWith(pendingLoad.prefix)) {
+          pendingLoad.invalidatedKeys += key
+        }
+      }
+      val removed = entries.remove(key) ?: return
+      currentWeight -= removed.weight
+    }
+  }
+
+  // must be called under the lock
+  private fun evictIfNeeded() {
+    val iterator = entries.values.iterator()
+    while (currentWeight > maxWeight && iterator.hasNext()) {
+      val eldest = iterator.next()
+      iterator.remove()
+      currentWeight -= eldest.weight
+    }
+  }
+
+  fun clear() {
+    synchronized(entries) {
+      entries.clear()
+      currentWeight = 0
+    }
+  }
+
+  override fun dispose() {
+    clear()
+    delegate.dispose()
+  }
+
+  private class PendingLoad {
+    var count = 0
+    var invalidations = 0L
+  }
+
+  private class PendingPrefixLoad(val prefix: String) {
+    val invalidatedKeys = HashSet<String>()
+  }
+}
+
+/**
+ * Wraps the storage with [CachingLearningObjectsStorage] if the cache is enabled in the Registry.
+ */
+fun LearningObjectsStorage.withCache(): LearningObjectsStorage {
+  val cacheSize = getLearningObjectsStorageCacheSize()
+  if (cacheSize <= 0) return this
+  return CachingLearningObjectsStorage(this, cacheSize)
+}
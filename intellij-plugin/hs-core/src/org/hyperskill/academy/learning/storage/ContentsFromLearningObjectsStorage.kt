@@ -14,7 +14,7 @@ class TextualContentsFromLearningObjectsStorage(
   override val path: String
 ) : TextualContents, ContentsFromLearningObjectsStorage {
   override val text: String
-    get() = String(storage.load(path))
+    get() = storage.loadText(path)
 }
 
 class BinaryContentsFromLearningObjectsStorage(
@@ -30,5 +30,5 @@ class UndeterminedContentsFromLearningObjectsStorage(
   override val path: String
 ) : UndeterminedContents, ContentsFromLearningObjectsStorage {
   override val textualRepresentation: String
-    get() = String(storage.load(path))
+    get() = storage.loadText(path)
 }
\ No newline at end of file
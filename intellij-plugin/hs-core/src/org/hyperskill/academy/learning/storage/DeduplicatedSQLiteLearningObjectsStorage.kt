@@ -0,0 +1,196 @@
+package org.hyperskill.academy.learning.storage
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.project.Project
+import com.intellij.project.stateStore
+import org.jetbrains.annotations.VisibleForTesting
+import org.jetbrains.sqlite.ObjectBinder
+import org.jetbrains.sqlite.SqliteConnection
+import java.nio.file.Path
+import java.security.MessageDigest
+
+private const val BLOBS_TABLE = "Blobs"
+private const val PATHS_TABLE = "Paths"
+
+/**
+ * Content-addressed storage: every distinct contents is stored once in the [BLOBS_TABLE] under its SHA-256 hash,
+ * and the [PATHS_TABLE] maps storage keys to these hashes.
+ * The hash is computed for the uncompressed contents, see [encodeLearningObject].
+ *
+ * Framework lessons contain almost the same files for every stage, so most of the stored keys share the same blobs.
+ */
+@Suppress("SqlNoDataSourceInspection", "SqlResolve")
+class DeduplicatedSQLiteLearningObjectsStorage(val db: Path) : LearningObjectsStorage, Disposable {
+
+  private val connection = SqliteConnection(db)
+
+  // storing values consists of several statements that must not interleave with statements of other threads
+  private val lock = Any()
+
+  private val getContentsStatement = connection.statementPool(
+    sql = "SELECT b.`value`, b.`codec` FROM `$PATHS_TABLE` p JOIN `$BLOBS_TABLE` b ON p.`hash` = b.`hash` WHERE p.`key`=?"
+  ) { ObjectBinder(1) }
+
+  private val getContentsByPrefixStatement = connection.statementPool(
+    sql = "SELECT p.`key`, b.`value`, b.`codec` FROM `$PATHS_TABLE` p JOIN `$BLOBS_TABLE` b ON p.`hash` = b.`hash` WHERE p.`key` >= ? AND p.`key` < ?"
+  ) { ObjectBinder(2) }
+
+  // used when the prefix has no upper bound, see [prefixUpperBound]
+  private val getContentsFromKeyStatement = connection.statementPool(
+    sql = "SELECT p.`key`, b.`value`, b.`codec` FROM `$PATHS_TABLE` p JOIN `$BLOBS_TABLE` b ON p.`hash` = b.`hash` WHERE p.`key` >= ?"
+  ) { ObjectBinder(1) }
+
+  private val getHashStatement = connection.statementPool(
+    sql = "SELECT `hash` FROM `$PATHS_TABLE` WHERE `key`=?"
+  ) { ObjectBinder(1) }
+
+  private val putBlobStatement = connection.statementPool(
+    sql = "INSERT OR IGNORE INTO `$BLOBS_TABLE`(`hash`, `value`, `codec`) VALUES (?, ?, ?)"
+  ) { ObjectBinder(3) }
+
+  private val putPathStatement = connection.statementPool(
+    sql = "INSERT OR REPLACE INTO `$PATHS_TABLE`(`key`, `hash`) VALUES (?, ?)"
+  ) { ObjectBinder(2) }
+
+  private val deleteUnusedBlobStatement = connection.statementPool(
+    sql = "DELETE FROM `$BLOBS_TABLE` WHERE `hash`=? AND NOT EXISTS (SELECT 1 FROM `$PATHS_TABLE` WHERE `hash`=?)"
+  ) { ObjectBinder(2) }
+
+  override val writeTextInYaml: Boolean = false
+
+  override fun load(key: String): ByteArray = getContentsStatement.use { statement, binder ->
+    binder.bind(key)
+    val resultSet = statement.executeQuery()
+    if (!resultSet.next()) return@use byteArrayOf()
+    val value = resultSet.getBytes(0) ?: return@use byteArrayOf()
+    decodeLearningObject(resultSet.getInt(1), value)
+  }
+
+  override fun loadAll(prefix: String): Map<String, ByteArray> {
+    val upperBound = prefixUpperBound(prefix)
+    val statementPool = if (upperBound != null) getContentsByPrefixStatement else getContentsFromKeyStatement
+    return statementPool.use { statement, binder ->
+      if (upperBound != null) binder.bind(prefix, upperBound) else binder.bind(prefix)
+      val resultSet = statement.executeQuery()
+      val values = HashMap<String, ByteArray>()
+      while (resultSet.next()) {
+        val key = resultSet.getString(0) ?: continue
+        values[key] = decodeLearningObject(resultSet.getInt(2), resultSet.getBytes(1) ?: byteArrayOf())
+      }
+      values
+    }
+  }
+
+  override fun store(key: String, value: ByteArray) {
+    synchronized(lock) {
+      inTransaction {
+        putContents(key, value)
+      }
+    }
+  }
+
+  override fun storeAll(values: Map<String, ByteArray>) {
+    synchronized(lock) {
+      inTransaction {
+        for ((key, value) in values) {
+          putContents(key, value)
+        }
+      }
+    }
+  }
+
+  private fun putContents(key: String, value: ByteArray) {
+    val hash = contentHash(value)
+    val previousHash = loadHash(key)
+    if (previousHash == hash) return
+
+    val encodedValue = encodeLearningObject(value)
+    putBlobStatement.use { statement, binder ->
+      binder.bind(hash, encodedValue.bytes, encodedValue.codec.id)
+      statement.executeUpdate()
+    }
+    putPathStatement.use { statement, binder ->
+      binder.bind(key, hash)
+      statement.executeUpdate()
+    }
+    if (previousHash != null) {
+      deleteUnusedBlobStatement.use { statement, binder ->
+        binder.bind(previousHash, previousHash)
+        statement.executeUpdate()
+      }
+    }
+  }
+
+  private fun loadHash(key: String): String? = getHashStatement.use { statement, binder ->
+    binder.bind(key)
+    val resultSet = statement.executeQuery()
+    if (resultSet.next()) resultSet.getString(0) else null
+  }
+
+  private fun inTransaction(action: () -> Unit) {
+    connection.execute("BEGIN TRANSACTION")
+    try {
+      action()
+      connection.execute("COMMIT")
+    }
+    catch (e: Throwable) {
+      connection.execute("ROLLBACK")
+      throw e
+    }
+  }
+
+  private fun createDB() {
+    connection.execute(
+      """
+      CREATE TABLE IF NOT EXISTS `$BLOBS_TABLE` (
+        `hash` TEXT PRIMARY KEY,
+        `value` BLOB,
+        `codec` INTEGER NOT NULL DEFAULT 0
+      )
+    """
+    )
+    connection.addCodecColumnIfMissing(BLOBS_TABLE)
+    connection.execute(
+      """
+      CREATE TABLE IF NOT EXISTS `$PATHS_TABLE` (
+        `key` TEXT PRIMARY KEY,
+        `hash` TEXT NOT NULL
+      )
+    """
+    )
+    connection.execute("CREATE INDEX IF NOT EXISTS `${PATHS_TABLE}_hash` ON `$PATHS_TABLE`(`hash`)")
+  }
+
+  override fun dispose() = connection.interruptAndClose()
+
+  companion object {
+    @VisibleForTesting
+    internal fun openOrCreateDB(db: Path): LearningObjectsStorage {
+      val storage = DeduplicatedSQLiteLearningObjectsStorage(db)
+      storage.createDB()
+      return storage
+    }
+
+    private const val DEDUPLICATED_CONTENTS_FILE = ".author_contents_dedup_storage_db"
+
+    /**
+     * Path of the database file of the [project], or `null` if the project has no `.idea` directory
+     */
+    fun dbPath(project: Project): Path? = project.stateStore.directoryStorePath?.resolve(DEDUPLICATED_CONTENTS_FILE)
+
+    fun openOrCreateDB(project: Project): LearningObjectsStorage {
+      val sqlFilePath = dbPath(project)
+      if (sqlFilePath == null) {
+        logger<LearningObjectsStorageManager>().error("Failed to get path for a SQLite file for the learning objects storage. The created storage is not persistent")
+        return InMemoryLearningObjectsStorage()
+      }
+      return openOrCreateDB(sqlFilePath)
+    }
+
+    fun contentHash(value: ByteArray): String {
+      val digest = MessageDigest.getInstance("SHA-256").digest(value)
+      return digest.joinToString("") { "%02x".format(it) }
+    }
+  }
+}
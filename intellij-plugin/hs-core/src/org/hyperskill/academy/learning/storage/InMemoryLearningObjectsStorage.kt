@@ -1,14 +1,20 @@
 package org.hyperskill.academy.learning.storage
 
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentSkipListMap
 
 open class InMemoryLearningObjectsStorage : LearningObjectsStorage {
 
-  private val storage = ConcurrentHashMap<String, ByteArray>()
+  // sorted, so that values with the same prefix could be found with a range query
+  private val storage = ConcurrentSkipListMap<String, ByteArray>()
   override val writeTextInYaml = false
 
   override fun load(key: String) = storage[key] ?: EMPTY_BYTE_ARRAY
 
+  override fun loadAll(prefix: String): Map<String, ByteArray> {
+    val upperBound = prefixUpperBound(prefix)
+    return HashMap(if (upperBound != null) storage.subMap(prefix, upperBound) else storage.tailMap(prefix))
+  }
+
   override fun store(key: String, value: ByteArray) {
     storage[key] = value
   }
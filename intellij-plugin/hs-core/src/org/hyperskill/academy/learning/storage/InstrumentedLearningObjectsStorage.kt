@@ -0,0 +1,64 @@
+package org.hyperskill.academy.learning.storage
+
+import com.google.common.base.Utf8
+
+/**
+ * Records latencies and volumes of all the operations of the [delegate] storage to [LearningObjectsStorageMetrics]
+ */
+class InstrumentedLearningObjectsStorage(
+  private val delegate: LearningObjectsStorage,
+  private val type: LearningObjectStorageType,
+  private val metrics: LearningObjectsStorageMetrics = LearningObjectsStorageMetrics.getInstance()
+) : LearningObjectsStorage {
+
+  override val writeTextInYaml: Boolean
+    get() = delegate.writeTextInYaml
+
+  override fun load(key: String): ByteArray {
+    val start = System.nanoTime()
+    val value = delegate.load(key)
+    metrics.record(type, LearningObjectsStorageOperation.LOAD, System.nanoTime() - start, value.size.toLong())
+    return value
+  }
+
+  override fun loadText(key: String): String {
+    val start = System.nanoTime()
+    val text = delegate.loadText(key)
+    val duration = System.nanoTime() - start
+    // the volume is the size of the stored bytes, as for `load`, the text is decoded from them as UTF-8
+    metrics.record(type, LearningObjectsStorageOperation.LOAD, duration, Utf8.encodedLength(text).toLong())
+    return text
+  }
+
+  override fun loadAll(prefix: String): Map<String, ByteArray> {
+    val start = System.nanoTime()
+    val values = delegate.loadAll(prefix)
+    metrics.record(type, LearningObjectsStorageOperation.LOAD_ALL, System.nanoTime() - start, values.values.sumOf { it.size.toLong() })
+    return values
+  }
+
+  override fun store(key: String, value: ByteArray) {
+    val start = System.nanoTime()
+    delegate.store(key, value)
+    metrics.record(type, LearningObjectsStorageOperation.STORE, System.nanoTime() - start, value.size.toLong())
+  }
+
+  override fun storeAll(values: Map<String, ByteArray>) {
+    val start = System.nanoTime()
+    delegate.storeAll(values)
+    metrics.record(type, LearningObjectsStorageOperation.STORE_ALL, System.nanoTime() - start, values.values.sumOf { it.size.toLong() })
+  }
+
+  override fun dispose() {
+    delegate.dispose()
+  }
+}
+
+/**
+ * Wraps the storage with [InstrumentedLearningObjectsStorage] if the metrics are enabled in the Registry.
+ * Otherwise, the storage is returned as is, so that disabled metrics have no overhead.
+ */
+fun LearningObjectsStorage.withMetrics(type: LearningObjectStorageType): LearningObjectsStorage {
+  if (!isLearningObjectsStorageMetricsEnabled()) return this
+  return InstrumentedLearningObjectsStorage(this, type)
+}
@@ -3,7 +3,8 @@ package org.hyperskill.academy.learning.storage
 enum class LearningObjectStorageType {
   InMemory,
   YAML,
-  SQLite;
+  SQLite,
+  DeduplicatedSQLite;
 
   companion object {
 
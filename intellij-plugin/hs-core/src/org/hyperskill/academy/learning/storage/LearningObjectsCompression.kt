@@ -0,0 +1,91 @@
+package org.hyperskill.academy.learning.storage
+
+import org.jetbrains.sqlite.SqliteConnection
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Codecs of values stored in the SQLite learning objects storages.
+ * The codec id is stored next to every value, so values written before compression was introduced
+ * have the [RAW] codec and stay readable.
+ */
+enum class LearningObjectsCodec(val id: Int) {
+  RAW(0),
+  DEFLATE(1);
+
+  companion object {
+    fun byId(id: Int): LearningObjectsCodec = entries.find { it.id == id } ?: error("Unknown learning objects codec: $id")
+  }
+}
+
+class EncodedValue(val codec: LearningObjectsCodec, val bytes: ByteArray)
+
+/**
+ * Values smaller than this threshold are stored raw, because compression does not save much on them.
+ */
+private const val COMPRESSION_THRESHOLD = 1024
+
+fun encodeLearningObject(value: ByteArray): EncodedValue {
+  if (value.size < COMPRESSION_THRESHOLD) return EncodedValue(LearningObjectsCodec.RAW, value)
+
+  val compressed = deflate(value)
+  // already compressed data, such as images or archives, does not become smaller
+  if (compressed.size >= value.size) return EncodedValue(LearningObjectsCodec.RAW, value)
+
+  return EncodedValue(LearningObjectsCodec.DEFLATE, compressed)
+}
+
+fun decodeLearningObject(codecId: Int, bytes: ByteArray): ByteArray = when (LearningObjectsCodec.byId(codecId)) {
+  LearningObjectsCodec.RAW -> bytes
+  LearningObjectsCodec.DEFLATE -> inflate(bytes)
+}
+
+private fun deflate(value: ByteArray): ByteArray {
+  val deflater = Deflater(Deflater.BEST_SPEED)
+  try {
+    deflater.setInput(value)
+    deflater.finish()
+    val output = ByteArrayOutputStream(value.size / 2)
+    val buffer = ByteArray(8192)
+    while (!deflater.finished()) {
+      val count = deflater.deflate(buffer)
+      output.write(buffer, 0, count)
+    }
+    return output.toByteArray()
+  }
+  finally {
+    deflater.end()
+  }
+}
+
+private fun inflate(value: ByteArray): ByteArray {
+  val inflater = Inflater()
+  try {
+    inflater.setInput(value)
+    val output = ByteArrayOutputStream(value.size * 2)
+    val buffer = ByteArray(8192)
+    while (!inflater.finished()) {
+      val count = inflater.inflate(buffer)
+      if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+        error("Compressed learning object is truncated")
+      }
+      output.write(buffer, 0, count)
+    }
+    return output.toByteArray()
+  }
+  finally {
+    inflater.end()
+  }
+}
+
+/**
+ * Adds the `codec` column to tables created before values were compressed.
+ */
+@Suppress("SqlNoDataSourceInspection", "SqlResolve")
+fun SqliteConnection.addCodecColumnIfMissing(table: String) {
+  val hasCodecColumn = selectInt("SELECT COUNT(*) FROM pragma_table_info('$table') WHERE `name`='codec'") > 0
+  if (!hasCodecColumn) {
+    execute("ALTER TABLE `$table` ADD COLUMN `codec` INTEGER NOT NULL DEFAULT 0")
+  }
+}
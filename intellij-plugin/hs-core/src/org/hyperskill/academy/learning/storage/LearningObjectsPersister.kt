@@ -10,8 +10,10 @@ class LearningObjectsPersister(private val project: Project) : CourseSetListener
 
     val storageManager = LearningObjectsStorageManager.getInstance(project)
 
-    storageManager.persistAllEduFiles(course)
+    val persistingFuture = storageManager.persistAllEduFiles(course)
 
     course.needWriteYamlText = storageManager.writeTextInYaml
+
+    storageManager.migrateToDefaultStorageTypeIfNeeded(persistingFuture)
   }
 }
\ No newline at end of file
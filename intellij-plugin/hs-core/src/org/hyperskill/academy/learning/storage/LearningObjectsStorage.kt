@@ -5,7 +5,41 @@ import com.intellij.openapi.Disposable
 interface LearningObjectsStorage : Disposable {
   val writeTextInYaml: Boolean
   fun load(key: String): ByteArray
+
+  /**
+   * Loads the value and decodes it as a text. Storages may override it to avoid decoding the same value several times.
+   */
+  fun loadText(key: String): String = String(load(key))
+
+  /**
+   * Loads all the values with keys starting with the [prefix], for example, all the files of a task with the `task.pathInCourse + "/"` prefix.
+   */
+  fun loadAll(prefix: String): Map<String, ByteArray>
+
   fun store(key: String, value: ByteArray)
+
+  /**
+   * Stores all the [values] at once. Storages that support transactions store them in a single transaction.
+   */
+  fun storeAll(values: Map<String, ByteArray>) {
+    for ((key, value) in values) {
+      store(key, value)
+    }
+  }
 }
 
-fun LearningObjectsStorage.store(key: String, value: String) = store(key, value.toByteArray())
\ No newline at end of file
+fun LearningObjectsStorage.store(key: String, value: String) = store(key, value.toByteArray())
+
+/**
+ * The smallest string that is greater than all the strings starting with the [prefix].
+ * Keys with the [prefix] are the keys in the range `[prefix, prefixUpperBound(prefix))`.
+ *
+ * @return `null` if there is no such string, i.e., the [prefix] is empty or consists of [Char.MAX_VALUE] only,
+ * so the keys with the [prefix] are all the keys starting from the [prefix]
+ */
+fun prefixUpperBound(prefix: String): String? {
+  // trailing `Char.MAX_VALUE` can't be incremented, so the carry goes to the previous char
+  val lastIndex = prefix.indexOfLast { it != Char.MAX_VALUE }
+  if (lastIndex < 0) return null
+  return prefix.substring(0, lastIndex) + (prefix[lastIndex] + 1)
+}
@@ -6,9 +6,11 @@ import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.components.service
 import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.progress.ProgressIndicator
 import com.intellij.openapi.project.DumbAware
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.Disposer
+import com.intellij.util.concurrency.AppExecutorUtil
 import com.intellij.util.containers.ContainerUtil
 import org.hyperskill.academy.learning.EduTestAware
 import org.hyperskill.academy.learning.course
@@ -17,40 +19,101 @@ import org.hyperskill.academy.learning.courseFormat.ext.visitEduFiles
 import org.hyperskill.academy.learning.courseFormat.tasks.Task
 import org.hyperskill.academy.learning.isLight
 import org.hyperskill.academy.learning.isUnitTestMode
+import org.hyperskill.academy.learning.messages.EduCoreBundle
+import org.hyperskill.academy.learning.runInBackground
+import org.hyperskill.academy.learning.yaml.YamlFormatSynchronizer
 import org.hyperskill.academy.learning.yaml.format.student.TakeFromStorageBinaryContents
 import org.hyperskill.academy.learning.yaml.format.student.TakeFromStorageTextualContents
 import org.jetbrains.annotations.TestOnly
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.Future
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
 
 @Service(Service.Level.PROJECT)
 class LearningObjectsStorageManager(private val project: Project) : DumbAware, Disposable, EduTestAware {
 
   /**
    * This is the project level storage used to store all the edu files contents and other data that should be persistent.
+   * It is replaced only at the end of a storage migration, see [migrateToStorageType].
    */
-  private val learningObjectsStorage: LearningObjectsStorage = createLearningObjectStorage()
+  @Volatile
+  private var learningObjectsStorage: LearningObjectsStorage = createLearningObjectStorage()
 
-  // In test mode, we store all the Futures that persist the data, so that we could later wait for them to finish
-  private val persistingTasks: MutableSet<Future<*>> = ContainerUtil.newConcurrentSet()
+  /**
+   * Guards replacing the [learningObjectsStorage]: everything that creates contents backed by the storage holds the read lock,
+   * and the storage is replaced under the write lock.
+   */
+  private val storageLock = ReentrantReadWriteLock()
+
+  private val migrationInProgress = AtomicBoolean(false)
+
+  // keys stored while a migration is in progress, they are copied once again before the storage is replaced
+  @Volatile
+  private var keysStoredDuringMigration: MutableSet<String>? = null
+
+  // Tasks that persist the data and haven't finished yet, their remaining batches are flushed before the storages are closed.
+  // There is a single task for every persisted course, task or list of additional files
+  private val persistingTasks: MutableSet<PersistingTask> = ContainerUtil.newConcurrentSet()
+
+  // set under the storage write lock when the storages are closed, batches aren't written after that
+  @Volatile
+  private var isStorageClosed: Boolean = false
+
+  // Storages are not children of the manager, because they must be closed only after the pending data is persisted, see [dispose]
+  private val storages: Disposable = Disposer.newDisposable("Learning objects storages")
 
   val writeTextInYaml: Boolean get() = learningObjectsStorage.writeTextInYaml
 
+  private val metricsLogging: ScheduledFuture<*>? = scheduleMetricsLogging()
+
   init {
-    Disposer.register(this, learningObjectsStorage)
+    Disposer.register(storages, learningObjectsStorage)
+    // files of the storages left by migrations that were finished before the IDE exit
+    deleteUnusedStorageFiles()
   }
 
-  private fun EduFile.persist(storage: LearningObjectsStorage) {
+  private fun scheduleMetricsLogging(): ScheduledFuture<*>? {
+    if (!isLearningObjectsStorageMetricsEnabled()) return null
+    val interval = getLearningObjectsStorageMetricsLogInterval()
+    if (interval <= 0) return null
+
+    return AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+      { LOG.info(LearningObjectsStorageMetrics.getInstance().dump()) },
+      interval,
+      interval,
+      TimeUnit.SECONDS
+    )
+  }
+
+  /**
+   * Replaces contents of the file with contents backed by the [storage].
+   * Returns the [PendingEduFile] if the contents must be written to the storage first, or `null` if there is nothing to write.
+   */
+  private fun EduFile.preparePersisting(storage: LearningObjectsStorage): PendingEduFile? {
     when (contents) {
       is ContentsFromLearningObjectsStorage -> {
-        return
+        return null
       }
 
       TakeFromStorageBinaryContents -> {
         contents = BinaryContentsFromLearningObjectsStorage(storage, pathInStorage)
+        return null
       }
 
       TakeFromStorageTextualContents -> {
         contents = TextualContentsFromLearningObjectsStorage(storage, pathInStorage)
+        return null
       }
 
       else -> {
@@ -59,82 +122,296 @@ class LearningObjectsStorageManager(private val project: Project) : DumbAware, D
 
         // this will allow logging all accesses to the contents while it is being persisted
         contents = contentsWithDiagnostics
-        val future = ApplicationManager.getApplication().executeOnPooledThread {
-          val persistedContents = try {
-            initialContents.persist(storage, pathInStorage)
-          }
-          catch (e: Exception) {
-            logger<LearningObjectsStorageManager>().error("Exception during persisting contents for EduFile $pathInStorage", e)
-            initialContents
-          }
+        return PendingEduFile(this, pathInStorage, initialContents, contentsWithDiagnostics)
+      }
+    }
+  }
 
-          // if persisting took long, contents could have been already changed
-          if (!setContentsIfEquals(contentsWithDiagnostics, persistedContents)) {
-            val currentContents = contents
-            val logMessage =
-              "Contents of a file changed while the file was being persisted: $pathInStorage from ${initialContents.debugString()} to ${currentContents.debugString()}"
-
-            // The level is ERROR if the contents are different, otherwise it is a WARNING,
-            // because the same contents do not lead to unexpected behavior
-            if (isSameContents(initialContents, currentContents)) {
-              logger<FileContents>().warn(logMessage)
-            }
-            else {
-              logger<FileContents>().error(logMessage)
-            }
-          }
-        }
+  /**
+   * Persists all the [eduFiles] with a single pooled task.
+   * Files are written in batches of [PERSIST_BATCH_SIZE], each batch is written with a single [LearningObjectsStorage.storeAll] call.
+   *
+   * @return the future that completes when all the files are persisted
+   */
+  private fun persist(eduFiles: List<EduFile>): Future<*> {
+    val pendingFiles = storageLock.read {
+      eduFiles.mapNotNull { it.preparePersisting(learningObjectsStorage) }
+    }
+    if (pendingFiles.isEmpty()) return CompletableFuture.completedFuture(Unit)
 
-        if (isUnitTestMode) {
-          persistingTasks.add(future)
+    val task = PersistingTask(pendingFiles.chunked(PERSIST_BATCH_SIZE))
+    persistingTasks.add(task)
+    task.future.whenComplete { _, _ -> persistingTasks.remove(task) }
+    AppExecutorUtil.getAppExecutorService().execute(task::persistRemainingBatches)
+
+    return task.future
+  }
+
+  /**
+   * Batches of a single [persist] call.
+   * They are written by a pooled thread, but [dispose] may take the remaining batches and write them itself.
+   */
+  private inner class PersistingTask(batches: List<List<PendingEduFile>>) {
+    private val remainingBatches = ConcurrentLinkedQueue(batches)
+    private val unfinishedBatchesCount = AtomicInteger(batches.size)
+    val future = CompletableFuture<Unit>()
+
+    fun persistRemainingBatches() {
+      while (true) {
+        val batch = remainingBatches.poll() ?: return
+        storageLock.read {
+          if (isStorageClosed) {
+            LOG.warn("${batch.size} learning objects are not persisted, because the storage is closed")
+          }
+          else {
+            persistBatch(batch, learningObjectsStorage)
+          }
         }
+        onBatchFinished()
       }
     }
-  }
 
-  private fun FileContents.persist(storage: LearningObjectsStorage, path: String): FileContents {
-    return when (this) {
-      is BinaryContents -> {
-        storage.store(path, bytes)
-        BinaryContentsFromLearningObjectsStorage(storage, path)
+    /**
+     * Takes the batches that aren't being written yet, so they are never written
+     *
+     * @return the number of files in the dropped batches
+     */
+    fun dropRemainingBatches(): Int {
+      var droppedFilesCount = 0
+      while (true) {
+        val batch = remainingBatches.poll() ?: break
+        droppedFilesCount += batch.size
+        onBatchFinished()
       }
+      return droppedFilesCount
+    }
 
-      is TextualContents -> {
-        storage.store(path, text)
-        TextualContentsFromLearningObjectsStorage(storage, path)
+    private fun onBatchFinished() {
+      if (unfinishedBatchesCount.decrementAndGet() == 0) {
+        future.complete(Unit)
       }
+    }
+  }
 
-      is UndeterminedContents -> {
-        storage.store(path, textualRepresentation)
-        UndeterminedContentsFromLearningObjectsStorage(storage, path)
+  private fun persistBatch(batch: List<PendingEduFile>, storage: LearningObjectsStorage) {
+    val persistedContents = try {
+      val values = LinkedHashMap<String, ByteArray>()
+      for (pendingFile in batch) {
+        values[pendingFile.path] = pendingFile.initialContents.bytesToStore()
       }
+      storage.storeAll(values)
+      keysStoredDuringMigration?.addAll(values.keys)
+      batch.map { it.initialContents.fromStorage(storage, it.path) }
+    }
+    catch (e: Exception) {
+      logger<LearningObjectsStorageManager>().error("Exception during persisting contents for EduFiles ${batch.joinToString { it.path }}", e)
+      batch.map { it.initialContents }
+    }
+
+    for ((pendingFile, contents) in batch.zip(persistedContents)) {
+      pendingFile.finishPersisting(contents)
     }
   }
 
-  fun persistAllEduFiles(course: Course) {
-    if (project.course?.isStudy != true) return
+  private fun PendingEduFile.finishPersisting(persistedContents: FileContents) {
+    // if persisting took long, contents could have been already changed
+    if (eduFile.setContentsIfEquals(contentsWithDiagnostics, persistedContents)) return
+
+    val currentContents = eduFile.contents
+    val logMessage =
+      "Contents of a file changed while the file was being persisted: $path from ${initialContents.debugString()} to ${currentContents.debugString()}"
+
+    // The level is ERROR if the contents are different, otherwise it is a WARNING,
+    // because the same contents do not lead to unexpected behavior
+    if (isSameContents(initialContents, currentContents)) {
+      logger<FileContents>().warn(logMessage)
+    }
+    else {
+      logger<FileContents>().error(logMessage)
+    }
+  }
 
+  private fun FileContents.bytesToStore(): ByteArray = when (this) {
+    is BinaryContents -> bytes
+    is TextualContents -> text.toByteArray()
+    is UndeterminedContents -> textualRepresentation.toByteArray()
+  }
+
+  private fun FileContents.fromStorage(storage: LearningObjectsStorage, path: String): FileContents = when (this) {
+    is BinaryContents -> BinaryContentsFromLearningObjectsStorage(storage, path)
+    is TextualContents -> TextualContentsFromLearningObjectsStorage(storage, path)
+    is UndeterminedContents -> UndeterminedContentsFromLearningObjectsStorage(storage, path)
+  }
+
+  fun persistAllEduFiles(course: Course): Future<*> {
+    if (project.course?.isStudy != true) return CompletableFuture.completedFuture(Unit)
+
+    val eduFiles = mutableListOf<EduFile>()
     course.visitEduFiles { eduFile ->
-      eduFile.persist(learningObjectsStorage)
+      eduFiles.add(eduFile)
+    }
+    return persist(eduFiles)
+  }
+
+  fun persistTaskEduFiles(task: Task): Future<*> {
+    if (project.course?.isStudy != true) return CompletableFuture.completedFuture(Unit)
+
+    return persist(task.taskFiles.values.toList())
+  }
+
+  fun persistCourseAdditionalFiles(course: Course): Future<*> {
+    if (project.course?.isStudy != true) return CompletableFuture.completedFuture(Unit)
+
+    return persist(course.additionalFiles)
+  }
+
+  /**
+   * Returns textual representations of all the task files.
+   * Contents of the files backed by the storage are loaded with a single [LearningObjectsStorage.loadAll] call instead of a call per file.
+   */
+  fun getTaskFilesTextualRepresentations(task: Task): Map<String, String> = storageLock.read {
+    val storage = learningObjectsStorage
+    val storedValues = storage.loadAll(task.pathInCourse + "/")
+    task.taskFiles.mapValues { (_, taskFile) -> taskFile.contents.textualRepresentation(storage, storedValues) }
+  }
+
+  private fun FileContents.textualRepresentation(loadedFrom: LearningObjectsStorage, storedValues: Map<String, ByteArray>): String {
+    if (this !is ContentsFromLearningObjectsStorage || storage !== loadedFrom) return textualRepresentation
+    val value = storedValues[path] ?: return textualRepresentation
+
+    return when (this) {
+      is BinaryContents -> Base64.getEncoder().encodeToString(value)
+      else -> String(value)
     }
   }
 
-  fun persistTaskEduFiles(task: Task) {
-    if (project.course?.isStudy != true) return
+  /**
+   * Starts a background migration of the project to the default storage type from the Registry,
+   * if migration of existing projects is enabled in the Registry.
+   * Projects with the in-memory storage are never migrated.
+   */
+  fun migrateToDefaultStorageTypeIfNeeded(persistingFuture: Future<*>) {
+    if (!isLearningObjectsStorageMigrationEnabled()) return
 
-    for (taskFile in task.taskFiles.values) {
-      taskFile.persist(learningObjectsStorage)
+    val currentType = LearningObjectStorageType.safeValueOf(PropertiesComponent.getInstance(project).getValue(PROPERTIES_KEY))
+    val targetType = getDefaultLearningObjectsStorageType()
+    if (currentType == null || currentType == targetType || currentType == LearningObjectStorageType.InMemory) return
+
+    migrateToStorageType(targetType, persistingFuture)
+  }
+
+  /**
+   * Copies all the learning objects to a new storage of the [targetType] in background.
+   * When everything is copied, the project storage type is switched to the [targetType], and all the edu files
+   * start reading their contents from the new storage.
+   * If the IDE is closed during the migration, the next migration to the same type continues from where this one stopped.
+   *
+   * @param persistingFuture the migration starts after this future completes
+   */
+  fun migrateToStorageType(targetType: LearningObjectStorageType, persistingFuture: Future<*> = CompletableFuture.completedFuture(Unit)) {
+    if (!migrationInProgress.compareAndSet(false, true)) return
+
+    runInBackground(project, EduCoreBundle.message("progress.title.migrating.learning.objects")) { indicator ->
+      try {
+        persistingFuture.get()
+        migrate(targetType, indicator)
+      }
+      finally {
+        keysStoredDuringMigration = null
+        migrationInProgress.set(false)
+      }
+    }
+  }
+
+  private fun migrate(targetType: LearningObjectStorageType, indicator: ProgressIndicator) {
+    val course = project.course ?: return
+    val target = createStorageByType(targetType, project) ?: return
+    val source = learningObjectsStorage
+    LOG.info("Migrating learning objects storage to $targetType")
+
+    var switched = false
+    try {
+      val keys = mutableListOf<String>()
+      course.visitEduFiles { eduFile ->
+        keys.add(eduFile.pathInStorage)
+      }
+
+      keysStoredDuringMigration = ContainerUtil.newConcurrentSet()
+      val migration = LearningObjectsStorageMigration(project, source, target, targetType, keys)
+      migration.copyEntries(indicator)
+
+      storageLock.write {
+        migration.copyChangedEntries(keysStoredDuringMigration.orEmpty())
+        switchStorage(course, source, target, targetType)
+        switched = true
+      }
+    }
+    finally {
+      if (!switched) {
+        Disposer.dispose(target)
+      }
     }
+
+    if (course.needWriteYamlText != target.writeTextInYaml) {
+      course.needWriteYamlText = target.writeTextInYaml
+      YamlFormatSynchronizer.saveAll(project)
+    }
+    LOG.info("Learning objects storage is migrated to $targetType")
   }
 
-  fun persistCourseAdditionalFiles(course: Course) {
-    if (project.course?.isStudy != true) return
+  // must be called under the write lock
+  private fun switchStorage(
+    course: Course,
+    source: LearningObjectsStorage,
+    target: LearningObjectsStorage,
+    targetType: LearningObjectStorageType
+  ) {
+    course.visitEduFiles { eduFile ->
+      val contents = eduFile.contents
+      if (contents is ContentsFromLearningObjectsStorage && contents.storage === source) {
+        eduFile.setContentsIfEquals(contents, contents.fromStorage(target, contents.path))
+      }
+    }
+
+    PropertiesComponent.getInstance(project).setValue(PROPERTIES_KEY, targetType.toString())
+    LearningObjectsStorageMigration.clearWatermark(project)
+    learningObjectsStorage = target
+    Disposer.register(storages, target)
+    // the old storage is not disposed right away, because somebody could still be reading contents from it,
+    // its file is deleted when the project is closed, see [deleteUnusedStorageFiles]
+  }
 
-    for (additionalFile in course.additionalFiles) {
-      additionalFile.persist(learningObjectsStorage)
+  /**
+   * Deletes the files of storages that are neither used by the project nor targets of an interrupted migration
+   */
+  private fun deleteUnusedStorageFiles() {
+    if (project.isDefault) return
+
+    val properties = PropertiesComponent.getInstance(project)
+    val usedTypes = setOf(
+      LearningObjectStorageType.safeValueOf(properties.getValue(PROPERTIES_KEY)),
+      LearningObjectsStorageMigration.interruptedMigrationType(project)
+    )
+    for (type in LearningObjectStorageType.values()) {
+      if (type in usedTypes) continue
+      val file = storageFile(type) ?: continue
+      try {
+        if (Files.deleteIfExists(file)) {
+          LOG.info("Deleted unused learning objects storage $file")
+        }
+      }
+      catch (e: IOException) {
+        LOG.warn("Failed to delete unused learning objects storage $file", e)
+      }
     }
   }
 
+  private fun storageFile(type: LearningObjectStorageType): Path? = when (type) {
+    LearningObjectStorageType.SQLite -> SQLiteLearningObjectsStorage.dbPath(project)
+    LearningObjectStorageType.DeduplicatedSQLite -> DeduplicatedSQLiteLearningObjectsStorage.dbPath(project)
+    LearningObjectStorageType.YAML, LearningObjectStorageType.InMemory -> null
+  }
+
   /**
    * Takes the learning objects storage type from the project settings, or, if nothing is configured,
    * updates settings so that they have the default storage type taken from the Registry.
@@ -160,11 +437,16 @@ class LearningObjectsStorageManager(private val project: Project) : DumbAware, D
     return createStorageByType(defaultStorageType, project) ?: YamlLearningObjectsStorage()
   }
 
-  private fun createStorageByType(type: LearningObjectStorageType?, project: Project): LearningObjectsStorage? = when (type) {
-    LearningObjectStorageType.YAML -> YamlLearningObjectsStorage()
-    LearningObjectStorageType.InMemory -> InMemoryLearningObjectsStorage()
-    LearningObjectStorageType.SQLite -> SQLiteLearningObjectsStorage.openOrCreateDB(project)
-    else -> null
+  private fun createStorageByType(type: LearningObjectStorageType?, project: Project): LearningObjectsStorage? {
+    if (type == null) return null
+
+    val storage = when (type) {
+      LearningObjectStorageType.YAML -> YamlLearningObjectsStorage()
+      LearningObjectStorageType.InMemory -> InMemoryLearningObjectsStorage()
+      LearningObjectStorageType.SQLite -> SQLiteLearningObjectsStorage.openOrCreateDB(project).withCache()
+      LearningObjectStorageType.DeduplicatedSQLite -> DeduplicatedSQLiteLearningObjectsStorage.openOrCreateDB(project).withCache()
+    }
+    return storage.withMetrics(type)
   }
 
   private fun isSameContents(c1: FileContents, c2: FileContents): Boolean {
@@ -175,7 +457,42 @@ class LearningObjectsStorageManager(private val project: Project) : DumbAware, D
     }
   }
 
-  override fun dispose() {}
+  override fun dispose() {
+    metricsLogging?.cancel(false)
+    flushPersisting()
+    // waits only for the batches that pooled threads are writing right now
+    storageLock.write {
+      isStorageClosed = true
+      Disposer.dispose(storages)
+    }
+    deleteUnusedStorageFiles()
+  }
+
+  /**
+   * Writes the batches that aren't written yet by the pooled threads, so that they are written before the storages are closed.
+   * EDT must not be blocked by writing, so there the batches are dropped instead,
+   * and the files keep their contents in memory for the rest of the session.
+   */
+  private fun flushPersisting() {
+    val tasks = persistingTasks.toList()
+    if (ApplicationManager.getApplication().isDispatchThread) {
+      val droppedFilesCount = tasks.sumOf { it.dropRemainingBatches() }
+      if (droppedFilesCount > 0) {
+        LOG.warn("$droppedFilesCount learning objects are not persisted, because the storage is closed on EDT")
+      }
+    }
+    else {
+      tasks.forEach { it.persistRemainingBatches() }
+    }
+  }
+
+  @TestOnly
+  internal fun replaceStorage(storage: LearningObjectsStorage) {
+    storageLock.write {
+      learningObjectsStorage = storage
+      Disposer.register(storages, storage)
+    }
+  }
 
   @TestOnly
   override fun cleanUpState() {
@@ -187,10 +504,21 @@ class LearningObjectsStorageManager(private val project: Project) : DumbAware, D
   companion object {
     fun getInstance(project: Project): LearningObjectsStorageManager = project.service()
 
+    private val LOG = logger<LearningObjectsStorageManager>()
+
     private const val PROPERTIES_KEY = "Hyperskill.LearningObjectsStorageType"
+
+    private const val PERSIST_BATCH_SIZE = 200
   }
 }
 
+private class PendingEduFile(
+  val eduFile: EduFile,
+  val path: String,
+  val initialContents: FileContents,
+  val contentsWithDiagnostics: FileContents
+)
+
 fun Task.persistEduFiles(project: Project) {
   LearningObjectsStorageManager.getInstance(project).persistTaskEduFiles(this)
 }
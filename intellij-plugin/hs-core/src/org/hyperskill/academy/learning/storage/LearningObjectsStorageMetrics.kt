@@ -0,0 +1,109 @@
+package org.hyperskill.academy.learning.storage
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+enum class LearningObjectsStorageOperation {
+  LOAD,
+  LOAD_ALL,
+  STORE,
+  STORE_ALL
+}
+
+/**
+ * Collects latencies and volumes of the learning objects storage operations for all the opened projects.
+ * Operations are recorded only by storages wrapped with [InstrumentedLearningObjectsStorage],
+ * and storages are wrapped only if the metrics are enabled in the Registry, see [isLearningObjectsStorageMetricsEnabled].
+ */
+@Service(Service.Level.APP)
+class LearningObjectsStorageMetrics {
+
+  private val operations = ConcurrentHashMap<OperationKey, OperationStatistics>()
+
+  private val contentsAccessedWhilePersistingCounter = AtomicLong()
+
+  fun record(type: LearningObjectStorageType, operation: LearningObjectsStorageOperation, nanos: Long, bytes: Long) {
+    operations.computeIfAbsent(OperationKey(type, operation)) { OperationStatistics() }.record(nanos, bytes)
+  }
+
+  /**
+   * Called by the diagnostics wrappers, see [wrapWithDiagnostics]
+   */
+  fun contentsAccessedWhilePersisting() {
+    contentsAccessedWhilePersistingCounter.incrementAndGet()
+  }
+
+  fun reset() {
+    operations.clear()
+    contentsAccessedWhilePersistingCounter.set(0)
+  }
+
+  /**
+   * Human-readable dump of all the collected metrics, one line per storage type and operation
+   */
+  fun dump(): String = buildString {
+    appendLine("Learning objects storage metrics:")
+    val sortedOperations = operations.entries.sortedWith(compareBy({ it.key.type }, { it.key.operation }))
+    if (sortedOperations.isEmpty()) {
+      appendLine("  no operations recorded")
+    }
+    for ((key, statistics) in sortedOperations) {
+      append("  ${key.type} ${key.operation}: ")
+      appendLine(statistics.dump())
+    }
+    appendLine("  contents accessed while persisting: ${contentsAccessedWhilePersistingCounter.get()}")
+  }
+
+  private data class OperationKey(val type: LearningObjectStorageType, val operation: LearningObjectsStorageOperation)
+
+  /**
+   * Latency histogram with exponential buckets: the bucket `i` counts operations that took less than `2^i` microseconds,
+   * the last bucket counts all the longer operations.
+   */
+  private class OperationStatistics {
+    private val count = AtomicLong()
+    private val totalNanos = AtomicLong()
+    private val maxNanos = AtomicLong()
+    private val bytes = AtomicLong()
+    private val buckets = AtomicLongArray(BUCKETS_COUNT)
+
+    fun record(nanos: Long, bytes: Long) {
+      count.incrementAndGet()
+      totalNanos.addAndGet(nanos)
+      maxNanos.accumulateAndGet(nanos, ::maxOf)
+      this.bytes.addAndGet(bytes)
+      buckets.incrementAndGet(bucketIndex(nanos))
+    }
+
+    fun dump(): String {
+      val count = count.get()
+      val averageMicros = if (count == 0L) 0 else TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / count)
+      val maxMicros = TimeUnit.NANOSECONDS.toMicros(maxNanos.get())
+      val histogram = (0 until BUCKETS_COUNT)
+        .filter { buckets[it] > 0 }
+        .joinToString(", ") { "${bucketName(it)}=${buckets[it]}" }
+      return "count=$count bytes=${bytes.get()} avg=${averageMicros}us max=${maxMicros}us histogram=[$histogram]"
+    }
+
+    companion object {
+      private const val BUCKETS_COUNT = 24
+
+      private fun bucketIndex(nanos: Long): Int {
+        val micros = TimeUnit.NANOSECONDS.toMicros(nanos)
+        val index = 64 - java.lang.Long.numberOfLeadingZeros(micros)
+        return index.coerceAtMost(BUCKETS_COUNT - 1)
+      }
+
+      private fun bucketName(index: Int): String =
+        if (index == BUCKETS_COUNT - 1) ">=${1L shl (index - 1)}us" else "<${1L shl index}us"
+    }
+  }
+
+  companion object {
+    fun getInstance(): LearningObjectsStorageMetrics = service()
+  }
+}
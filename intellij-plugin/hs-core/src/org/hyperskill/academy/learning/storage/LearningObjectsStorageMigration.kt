@@ -0,0 +1,105 @@
+package org.hyperskill.academy.learning.storage
+
+import com.intellij.ide.util.PropertiesComponent
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.openapi.progress.ProgressIndicator
+import com.intellij.openapi.project.Project
+import org.hyperskill.academy.learning.messages.EduCoreBundle
+
+/**
+ * Copies the learning objects with the given [keys] from the [source] storage to the [target] storage.
+ *
+ * Keys are copied in their natural order in batches of [BATCH_SIZE].
+ * After every batch, the last copied key is saved to the project properties,
+ * so that a migration interrupted by the IDE exit continues after this key the next time it is started.
+ * Entries stored to the [source] after they were copied are known only to the interrupted migration,
+ * so the resumed migration first compares the already copied entries with the [source] and copies the changed ones again.
+ */
+class LearningObjectsStorageMigration(
+  private val project: Project,
+  private val source: LearningObjectsStorage,
+  private val target: LearningObjectsStorage,
+  private val targetType: LearningObjectStorageType,
+  keys: Collection<String>
+) {
+
+  private val sortedKeys: List<String> = keys.toSortedSet().toList()
+
+  fun copyEntries(indicator: ProgressIndicator) {
+    val properties = PropertiesComponent.getInstance(project)
+    val lastCopiedKey = readWatermark(properties)
+    val remainingKeys = if (lastCopiedKey == null) sortedKeys else sortedKeys.filter { it > lastCopiedKey }
+
+    val alreadyCopied = sortedKeys.size - remainingKeys.size
+    indicator.isIndeterminate = false
+    if (alreadyCopied > 0) {
+      LOG.info("Resuming learning objects migration to $targetType after $alreadyCopied entries")
+      copyOutdatedEntries(sortedKeys.subList(0, alreadyCopied), indicator)
+    }
+
+    var copied = alreadyCopied
+    for (batch in remainingKeys.chunked(BATCH_SIZE)) {
+      indicator.checkCanceled()
+
+      target.storeAll(batch.associateWith { source.load(it) })
+
+      copied += batch.size
+      properties.setValue(WATERMARK_PROPERTIES_KEY, "$targetType$WATERMARK_SEPARATOR${batch.last()}")
+      indicator.fraction = copied.toDouble() / sortedKeys.size
+      indicator.text2 = EduCoreBundle.message("progress.details.migrating.learning.objects", copied, sortedKeys.size)
+    }
+  }
+
+  private fun copyOutdatedEntries(copiedKeys: List<String>, indicator: ProgressIndicator) {
+    var outdated = 0
+    for (batch in copiedKeys.chunked(BATCH_SIZE)) {
+      indicator.checkCanceled()
+
+      val outdatedValues = batch.associateWith { source.load(it) }.filter { (key, value) -> !value.contentEquals(target.load(key)) }
+      if (outdatedValues.isNotEmpty()) {
+        target.storeAll(outdatedValues)
+        outdated += outdatedValues.size
+      }
+    }
+    if (outdated > 0) {
+      LOG.info("$outdated learning objects were changed after they were copied to $targetType, they are copied again")
+    }
+  }
+
+  /**
+   * Copies the entries that were changed in the [source] storage after they were copied by [copyEntries]
+   */
+  fun copyChangedEntries(changedKeys: Collection<String>) {
+    if (changedKeys.isEmpty()) return
+    target.storeAll(changedKeys.associateWith { source.load(it) })
+  }
+
+  private fun readWatermark(properties: PropertiesComponent): String? {
+    val watermark = properties.getValue(WATERMARK_PROPERTIES_KEY) ?: return null
+    val type = watermark.substringBefore(WATERMARK_SEPARATOR)
+    // the previous migration was to another storage type, so it should start from the beginning
+    if (type != targetType.toString()) return null
+    return watermark.substringAfter(WATERMARK_SEPARATOR)
+  }
+
+  companion object {
+    private val LOG = logger<LearningObjectsStorageMigration>()
+
+    private const val BATCH_SIZE = 200
+
+    private const val WATERMARK_PROPERTIES_KEY = "Hyperskill.LearningObjectsStorageMigration"
+    private const val WATERMARK_SEPARATOR = ':'
+
+    /**
+     * The storage type of the interrupted migration, if there is any
+     */
+    fun interruptedMigrationType(project: Project): LearningObjectStorageType? {
+      val watermark = PropertiesComponent.getInstance(project).getValue(WATERMARK_PROPERTIES_KEY) ?: return null
+      return LearningObjectStorageType.safeValueOf(watermark.substringBefore(WATERMARK_SEPARATOR))
+    }
+
+    fun clearWatermark(project: Project) {
+      PropertiesComponent.getInstance(project).unsetValue(WATERMARK_PROPERTIES_KEY)
+    }
+  }
+}
@@ -4,6 +4,11 @@ import com.intellij.openapi.util.registry.Registry
 import java.util.*
 
 private const val REGISTRY_KEY = "hyperskill.learning.objects.storage.type"
+private const val CACHE_SIZE_REGISTRY_KEY = "hyperskill.learning.objects.storage.cache.size.kb"
+private const val DEFAULT_CACHE_SIZE_KB = 16 * 1024
+private const val MIGRATION_REGISTRY_KEY = "hyperskill.learning.objects.storage.migrate.existing.projects"
+private const val METRICS_REGISTRY_KEY = "hyperskill.learning.objects.storage.metrics"
+private const val METRICS_LOG_INTERVAL_REGISTRY_KEY = "hyperskill.learning.objects.storage.metrics.log.interval"
 
 /**
  * [getDefaultLearningObjectsStorageType] looks up the registry to find the default type for Learning Objects Storage for newly created projects
@@ -22,4 +27,28 @@ fun getDefaultLearningObjectsStorageType(): LearningObjectStorageType {
 
 fun setDefaultLearningObjectsStorageType(value: LearningObjectStorageType) {
   Registry.get(REGISTRY_KEY).selectedOption = value.toString()
-}
\ No newline at end of file
+}
+
+/**
+ * [getLearningObjectsStorageCacheSize] looks up the registry to find the size in bytes of the cache of loaded learning objects.
+ * Zero means that the cache is disabled.
+ */
+fun getLearningObjectsStorageCacheSize(): Long {
+  val sizeInKb = Registry.intValue(CACHE_SIZE_REGISTRY_KEY, DEFAULT_CACHE_SIZE_KB)
+  return sizeInKb.toLong() * 1024
+}
+
+/**
+ * Whether existing projects should be migrated to the default storage type from [getDefaultLearningObjectsStorageType]
+ */
+fun isLearningObjectsStorageMigrationEnabled(): Boolean = Registry.`is`(MIGRATION_REGISTRY_KEY, false)
+
+/**
+ * Whether operations of the learning objects storages are recorded to [LearningObjectsStorageMetrics]
+ */
+fun isLearningObjectsStorageMetricsEnabled(): Boolean = Registry.`is`(METRICS_REGISTRY_KEY, false)
+
+/**
+ * The interval in seconds to write [LearningObjectsStorageMetrics] to the IDE log. Zero means that metrics are not logged periodically.
+ */
+fun getLearningObjectsStorageMetricsLogInterval(): Long = Registry.intValue(METRICS_LOG_INTERVAL_REGISTRY_KEY, 0).toLong()
@@ -15,37 +15,94 @@ class SQLiteLearningObjectsStorage(val db: Path) : LearningObjectsStorage, Dispo
 
   private val connection = SqliteConnection(db)
 
+  // transactions must not interleave with statements of other threads
+  private val lock = Any()
+
   private val getAuthorContentsStatement = connection.statementPool(
-    sql = "SELECT `value` FROM $AUTHOR_CONTENTS_TABLE WHERE `key`=?"
+    sql = "SELECT `value`, `codec` FROM $AUTHOR_CONTENTS_TABLE WHERE `key`=?"
   ) { ObjectBinder(1) }
 
-  private val putAuthorContentsStatement = connection.statementPool(
-    sql = "INSERT OR REPLACE INTO `$AUTHOR_CONTENTS_TABLE`(`key`, `value`) VALUES (?, ?)"
+  private val getAuthorContentsByPrefixStatement = connection.statementPool(
+    sql = "SELECT `key`, `value`, `codec` FROM $AUTHOR_CONTENTS_TABLE WHERE `key` >= ? AND `key` < ?"
   ) { ObjectBinder(2) }
 
+  // used when the prefix has no upper bound, see [prefixUpperBound]
+  private val getAuthorContentsFromKeyStatement = connection.statementPool(
+    sql = "SELECT `key`, `value`, `codec` FROM $AUTHOR_CONTENTS_TABLE WHERE `key` >= ?"
+  ) { ObjectBinder(1) }
+
+  private val putAuthorContentsStatement = connection.statementPool(
+    sql = "INSERT OR REPLACE INTO `$AUTHOR_CONTENTS_TABLE`(`key`, `value`, `codec`) VALUES (?, ?, ?)"
+  ) { ObjectBinder(3) }
+
   override val writeTextInYaml: Boolean = false
 
   override fun load(key: String): ByteArray = getAuthorContentsStatement.use { statement, binder ->
     binder.bind(key)
     val resultSet = statement.executeQuery()
-    resultSet.next()
-    resultSet.getBytes(0) ?: byteArrayOf()
+    if (!resultSet.next()) return@use byteArrayOf()
+    val value = resultSet.getBytes(0) ?: return@use byteArrayOf()
+    decodeLearningObject(resultSet.getInt(1), value)
+  }
+
+  override fun loadAll(prefix: String): Map<String, ByteArray> {
+    val upperBound = prefixUpperBound(prefix)
+    val statementPool = if (upperBound != null) getAuthorContentsByPrefixStatement else getAuthorContentsFromKeyStatement
+    return statementPool.use { statement, binder ->
+      if (upperBound != null) binder.bind(prefix, upperBound) else binder.bind(prefix)
+      val resultSet = statement.executeQuery()
+      val values = HashMap<String, ByteArray>()
+      while (resultSet.next()) {
+        val key = resultSet.getString(0) ?: continue
+        values[key] = decodeLearningObject(resultSet.getInt(2), resultSet.getBytes(1) ?: byteArrayOf())
+      }
+      values
+    }
   }
 
   //TODO we need to encrypt stored data: EDU-6744 Encrypt data in the learning objects storage
-  override fun store(key: String, value: ByteArray) = putAuthorContentsStatement.use { statement, binder ->
-    binder.bind(key, value)
-    statement.executeUpdate()
+  override fun store(key: String, value: ByteArray) {
+    synchronized(lock) {
+      putContents(key, value)
+    }
   }
 
-  private fun createDB() = connection.execute(
+  override fun storeAll(values: Map<String, ByteArray>) {
+    synchronized(lock) {
+      connection.execute("BEGIN TRANSACTION")
+      try {
+        for ((key, value) in values) {
+          putContents(key, value)
+        }
+        connection.execute("COMMIT")
+      }
+      catch (e: Throwable) {
+        connection.execute("ROLLBACK")
+        throw e
+      }
+    }
+  }
+
+  private fun putContents(key: String, value: ByteArray) {
+    val encodedValue = encodeLearningObject(value)
+    putAuthorContentsStatement.use { statement, binder ->
+      binder.bind(key, encodedValue.bytes, encodedValue.codec.id)
+      statement.executeUpdate()
+    }
+  }
+
+  private fun createDB() {
+    connection.execute(
+      """
+      CREATE TABLE IF NOT EXISTS `$AUTHOR_CONTENTS_TABLE` (
+        `key` TEXT PRIMARY KEY,
+        `value` BLOB,
+        `codec` INTEGER NOT NULL DEFAULT 0
+      )
     """
-    CREATE TABLE IF NOT EXISTS `$AUTHOR_CONTENTS_TABLE` (
-      `key` TEXT PRIMARY KEY,
-      `value` BLOB
     )
-  """
-  )
+    connection.addCodecColumnIfMissing(AUTHOR_CONTENTS_TABLE)
+  }
 
   override fun dispose() = connection.interruptAndClose()
 
@@ -58,9 +115,13 @@ class SQLiteLearningObjectsStorage(val db: Path) : LearningObjectsStorage, Dispo
 
     private const val COURSE_AUTHOR_CONTENTS_FILE = ".author_contents_storage_db"
 
+    /**
+     * Path of the database file of the [project], or `null` if the project has no `.idea` directory
+     */
+    fun dbPath(project: Project): Path? = project.stateStore.directoryStorePath?.resolve(COURSE_AUTHOR_CONTENTS_FILE)
+
     fun openOrCreateDB(project: Project): LearningObjectsStorage {
-      val ideaPath = project.stateStore.directoryStorePath
-      val sqlFilePath = ideaPath?.resolve(COURSE_AUTHOR_CONTENTS_FILE)
+      val sqlFilePath = dbPath(project)
       if (sqlFilePath == null) {
         logger<LearningObjectsStorageManager>().error("Failed to get path for a SQLite file for the learning objects storage. The created storage is not persistent")
         return InMemoryLearningObjectsStorage()
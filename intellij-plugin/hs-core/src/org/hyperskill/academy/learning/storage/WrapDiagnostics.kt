@@ -10,6 +10,9 @@ import org.hyperskill.academy.learning.courseFormat.UndeterminedContents
 private val LOG: Logger = logger<FileContents>()
 
 private fun warnContents(contents: FileContents, pathInStorage: String) {
+  if (isLearningObjectsStorageMetricsEnabled()) {
+    LearningObjectsStorageMetrics.getInstance().contentsAccessedWhilePersisting()
+  }
   LOG.info("Contents of a file was accessed while the file was being persisted: $pathInStorage ${contents.javaClass}")
 }
 
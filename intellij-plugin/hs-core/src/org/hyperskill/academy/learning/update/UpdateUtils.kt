@@ -76,20 +76,27 @@ object UpdateUtils {
 
     val flm = FrameworkLessonManager.getInstance(project)
 
+    // stored changes are rebased while the task still has its old files, since they may be stored as deltas against them
     if (lesson.currentTaskIndex != task.index - 1) {
-      updateTaskFiles(task, remoteTask.nonPropagatableFiles, false)
-      flm.updateUserChanges(task, task.taskFiles.mapValues { (_, taskFile) -> taskFile.contents.textualRepresentation })
+      val remoteTaskFiles = remoteTask.nonPropagatableFiles
+      flm.updateUserChanges(task, task.textualRepresentationsWith(remoteTaskFiles))
+      updateTaskFiles(task, remoteTaskFiles, false)
     }
     else {
-      if (updatePropagatableFiles && !task.hasChangedFiles(project)) {
-        updateTaskFiles(task, remoteTask.taskFiles, true)
+      val remoteTaskFiles = if (updatePropagatableFiles && !task.hasChangedFiles(project)) {
+        remoteTask.taskFiles
       }
       else {
-        updateTaskFiles(task, remoteTask.nonPropagatableFiles, true)
+        remoteTask.nonPropagatableFiles
       }
+      flm.updateUserChanges(task, task.textualRepresentationsWith(remoteTaskFiles))
+      updateTaskFiles(task, remoteTaskFiles, true)
     }
   }
 
+  private fun Task.textualRepresentationsWith(remoteTaskFiles: Map<String, TaskFile>): Map<String, String> =
+    (taskFiles + remoteTaskFiles).mapValues { (_, taskFile) -> taskFile.contents.textualRepresentation }
+
   private val Task.nonPropagatableFiles: Map<String, TaskFile>
     get() = taskFiles.filter { !it.value.shouldBePropagated() }
 
@@ -0,0 +1,52 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.util.io.DataInputOutputUtil
+import com.intellij.util.io.UnsyncByteArrayOutputStream
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import java.io.DataOutputStream
+
+class FrameworkRecordEnvelopeTest {
+
+  @Test
+  fun `test payloads are unwrapped`() {
+    val small = "fun main() {}".toByteArray()
+    val large = "fun main() {}\n".repeat(100).toByteArray()
+
+    assertArrayEquals(small, FrameworkRecordEnvelope.unwrap(FrameworkRecordEnvelope.wrap(small)))
+    assertArrayEquals(large, FrameworkRecordEnvelope.unwrap(FrameworkRecordEnvelope.wrap(large)))
+  }
+
+  @Test
+  fun `test negative length is rejected`() {
+    assertThrows(CorruptedFrameworkRecordException::class.java) {
+      FrameworkRecordEnvelope.unwrap(record(codec = 1, length = -1, data = ByteArray(16)))
+    }
+  }
+
+  @Test
+  fun `test length exceeding the compression ratio is rejected`() {
+    assertThrows(CorruptedFrameworkRecordException::class.java) {
+      FrameworkRecordEnvelope.unwrap(record(codec = 1, length = Int.MAX_VALUE, data = ByteArray(16)))
+    }
+  }
+
+  @Test
+  fun `test length of raw payload must match its size`() {
+    assertThrows(CorruptedFrameworkRecordException::class.java) {
+      FrameworkRecordEnvelope.unwrap(record(codec = 0, length = 1024, data = ByteArray(16)))
+    }
+  }
+
+  private fun record(codec: Int, length: Int, data: ByteArray): ByteArray {
+    val output = UnsyncByteArrayOutputStream()
+    DataOutputStream(output).use { out ->
+      out.writeByte(codec)
+      out.writeInt(0)
+      DataInputOutputUtil.writeINT(out, length)
+      out.write(data)
+    }
+    return output.toByteArray()
+  }
+}
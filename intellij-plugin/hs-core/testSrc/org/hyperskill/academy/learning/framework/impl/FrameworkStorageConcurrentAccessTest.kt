@@ -0,0 +1,61 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.util.io.FileUtil
+import org.hyperskill.academy.learning.EduTestCase
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class FrameworkStorageConcurrentAccessTest : EduTestCase() {
+
+  @Test
+  fun `test records are not corrupted by concurrent reads and writes`() {
+    val storage = FrameworkStorage(FileUtil.createTempDirectory("framework", "storage").toPath().resolve("storage"))
+    Disposer.register(testRootDisposable, storage)
+    storage.migrate(FrameworkLessonManagerImpl.VERSION)
+
+    val executor = Executors.newFixedThreadPool(THREADS)
+    try {
+      val start = CountDownLatch(1)
+      val writers = (0 until THREADS).map { thread ->
+        executor.submit(Callable {
+          start.await()
+          var record = -1
+          for (iteration in 0 until ITERATIONS) {
+            val changes = UserChanges(listOf(Change.ChangeFile("file$thread.txt", text(thread, iteration))), iteration.toLong())
+            record = storage.updateUserChanges(record, changes)
+
+            // every writer reads its own record, which must contain its latest changes
+            val readChanges = storage.getUserChanges(record)
+            assertEquals(iteration.toLong(), readChanges.timestamp)
+            assertEquals(text(thread, iteration), readChanges.changes.single().text)
+          }
+          record
+        })
+      }
+      start.countDown()
+
+      val records = writers.map { it.get(1, TimeUnit.MINUTES) }
+      assertEquals("Every writer must get its own record", THREADS, records.toSet().size)
+
+      for ((thread, record) in records.withIndex()) {
+        val changes = storage.getUserChanges(record)
+        assertEquals(ITERATIONS - 1L, changes.timestamp)
+        assertEquals(text(thread, ITERATIONS - 1), changes.changes.single().text)
+      }
+    }
+    finally {
+      executor.shutdownNow()
+    }
+  }
+
+  private fun text(thread: Int, iteration: Int): String = "thread $thread iteration $iteration\n".repeat(20 + iteration % 50)
+
+  companion object {
+    private const val THREADS = 8
+    private const val ITERATIONS = 200
+  }
+}
@@ -0,0 +1,122 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import org.hyperskill.academy.learning.courseFormat.InMemoryTextualContents
+import org.hyperskill.academy.learning.courseFormat.TaskFile
+import org.hyperskill.academy.learning.courseFormat.tasks.EduTask
+import org.hyperskill.academy.learning.courseFormat.tasks.Task
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.util.concurrent.Executor
+
+class FrameworkTaskStatePrefetcherTest {
+
+  private val pendingLoads = mutableListOf<Runnable>()
+  private var loadsCount = 0
+
+  private val prefetcher = FrameworkTaskStatePrefetcher(Executor { pendingLoads += it }) { task ->
+    loadsCount++
+    StoredTaskState(task.taskFiles.mapValues { it.value.text }, UserChanges(listOf(Change.ChangeFile("task.txt", "changed")), 42))
+  }
+
+  @Test
+  fun `test prefetched state is used`() {
+    val task = createTask(record = 1)
+
+    prefetcher.prefetch(listOf(task))
+    runPendingLoads()
+
+    val state = prefetcher.takeState(task)
+    assertNotNull(state)
+    assertEquals(mapOf("task.txt" to "initial"), state!!.initialFiles)
+    assertEquals(42, state.userChanges.timestamp)
+    // the state is taken only once
+    assertNull(prefetcher.takeState(task))
+  }
+
+  @Test
+  fun `test valid state is not loaded again`() {
+    val task = createTask(record = 1)
+
+    prefetcher.prefetch(listOf(task))
+    runPendingLoads()
+    prefetcher.prefetch(listOf(task))
+    runPendingLoads()
+
+    assertEquals(1, loadsCount)
+  }
+
+  @Test
+  fun `test state is invalidated by record write`() {
+    val task = createTask(record = 1)
+    val otherTask = createTask(record = 2)
+
+    prefetcher.prefetch(listOf(task, otherTask))
+    runPendingLoads()
+    prefetcher.invalidateRecord(1)
+
+    assertNull(prefetcher.takeState(task))
+    assertNotNull(prefetcher.takeState(otherTask))
+  }
+
+  @Test
+  fun `test state loaded during write is discarded`() {
+    val task = createTask(record = 1)
+
+    prefetcher.prefetch(listOf(task))
+    prefetcher.invalidateRecord(2)
+    runPendingLoads()
+
+    assertNull(prefetcher.takeState(task))
+  }
+
+  @Test
+  fun `test state is invalidated by record change`() {
+    val task = createTask(record = -1)
+
+    prefetcher.prefetch(listOf(task))
+    runPendingLoads()
+    task.record = 3
+
+    assertNull(prefetcher.takeState(task))
+  }
+
+  @Test
+  fun `test state is invalidated by task files change`() {
+    val task = createTask(record = 1)
+
+    prefetcher.prefetch(listOf(task))
+    runPendingLoads()
+    task.taskFiles.getValue("task.txt").contents = InMemoryTextualContents("updated")
+
+    assertNull(prefetcher.takeState(task))
+  }
+
+  @Test
+  fun `test states of not requested tasks are dropped`() {
+    val task = createTask(record = 1)
+    val otherTask = createTask(record = 2)
+
+    prefetcher.prefetch(listOf(task))
+    runPendingLoads()
+    prefetcher.prefetch(listOf(otherTask))
+    runPendingLoads()
+
+    assertNull(prefetcher.takeState(task))
+    assertNotNull(prefetcher.takeState(otherTask))
+  }
+
+  private fun runPendingLoads() {
+    val loads = pendingLoads.toList()
+    pendingLoads.clear()
+    loads.forEach { it.run() }
+  }
+
+  private fun createTask(record: Int): Task {
+    val task = EduTask("task")
+    task.addTaskFile(TaskFile("task.txt", "initial"))
+    task.record = record
+    return task
+  }
+}
@@ -0,0 +1,113 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FrameworkUserChangesCacheTest {
+
+  private var loadsCount = 0
+
+  private fun load(changes: UserChanges): (initialText: (String) -> String?) -> UserChanges = {
+    loadsCount++
+    changes
+  }
+
+  @Test
+  fun `test decoded changes are cached`() {
+    val cache = FrameworkUserChangesCache(1024 * 1024)
+    val changes = UserChanges(listOf(Change.AddFile("foo.txt", "foo")))
+
+    cache.getOrLoad(1, { null }, { null }, load(changes))
+    val cachedChanges = cache.getOrLoad(1, { null }, { null }, load(changes))
+
+    assertSame(changes, cachedChanges)
+    assertEquals(1, loadsCount)
+    assertEquals(1, cache.hits)
+    assertEquals(1, cache.misses)
+  }
+
+  @Test
+  fun `test invalidated record is loaded again`() {
+    val cache = FrameworkUserChangesCache(1024 * 1024)
+    val changes = UserChanges(listOf(Change.AddFile("foo.txt", "foo")))
+    val updatedChanges = UserChanges(listOf(Change.AddFile("foo.txt", "bar")))
+
+    cache.getOrLoad(1, { null }, { null }, load(changes))
+    cache.invalidate(1)
+
+    assertSame(updatedChanges, cache.getOrLoad(1, { null }, { null }, load(updatedChanges)))
+    assertEquals(2, loadsCount)
+  }
+
+  @Test
+  fun `test changes are loaded again for another initial state`() {
+    val cache = FrameworkUserChangesCache(1024 * 1024)
+    val changes = UserChanges(listOf(Change.ChangeFile("foo.txt", "foo")))
+    val loadWithInitialText: (initialText: (String) -> String?) -> UserChanges = { initialText ->
+      loadsCount++
+      initialText("foo.txt")
+      changes
+    }
+
+    cache.getOrLoad(1, { "initial" }, { null }, loadWithInitialText)
+    cache.getOrLoad(1, { "initial" }, { null }, loadWithInitialText)
+    assertEquals(1, loadsCount)
+
+    cache.getOrLoad(1, { "updated" }, { null }, loadWithInitialText)
+    assertEquals(2, loadsCount)
+  }
+
+  @Test
+  fun `test initial texts are not loaded on hit if their versions are the same`() {
+    val cache = FrameworkUserChangesCache(1024 * 1024)
+    val changes = UserChanges(listOf(Change.ChangeFile("foo.txt", "foo")))
+    val loadWithInitialText: (initialText: (String) -> String?) -> UserChanges = { initialText ->
+      loadsCount++
+      initialText("foo.txt")
+      changes
+    }
+    val version = Any()
+    var initialTextLoadsCount = 0
+    val initialText: (String) -> String? = {
+      initialTextLoadsCount++
+      "initial"
+    }
+
+    cache.getOrLoad(1, initialText, { version }, loadWithInitialText)
+    assertSame(changes, cache.getOrLoad(1, initialText, { version }, loadWithInitialText))
+    assertEquals(1, loadsCount)
+    assertEquals(1, initialTextLoadsCount)
+
+    // the text is compared once for the new version, and the following hits don't load it
+    val newVersion = Any()
+    assertSame(changes, cache.getOrLoad(1, initialText, { newVersion }, loadWithInitialText))
+    assertSame(changes, cache.getOrLoad(1, initialText, { newVersion }, loadWithInitialText))
+    assertEquals(1, loadsCount)
+    assertEquals(2, initialTextLoadsCount)
+  }
+
+  @Test
+  fun `test least recently used changes are evicted`() {
+    val text = "a".repeat(1000)
+    val cache = FrameworkUserChangesCache(5000)
+
+    for (record in 1..3) {
+      cache.getOrLoad(record, { null }, { null }, load(UserChanges(listOf(Change.AddFile("foo.txt", text)))))
+    }
+
+    assertTrue(cache.evictions > 0)
+    assertTrue(cache.weight <= 5000)
+    // the latest record is still cached
+    cache.getOrLoad(3, { null }, { null }, load(UserChanges.empty()))
+    assertEquals(3, loadsCount)
+  }
+
+  @Test
+  fun `test empty record is not loaded`() {
+    val cache = FrameworkUserChangesCache(1024 * 1024)
+    assertSame(UserChanges.empty(), cache.getOrLoad(-1, { null }, { null }, load(UserChanges.empty())))
+    assertEquals(0, loadsCount)
+  }
+}
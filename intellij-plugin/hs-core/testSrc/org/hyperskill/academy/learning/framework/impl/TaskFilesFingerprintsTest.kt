@@ -0,0 +1,80 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.openapi.application.runWriteAction
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.vfs.VfsUtil
+import com.intellij.openapi.vfs.VirtualFile
+import org.hyperskill.academy.learning.EduTestCase
+import org.junit.Test
+
+class TaskFilesFingerprintsTest : EduTestCase() {
+
+  private val initialState = mapOf(
+    "src/Main.kt" to "fun main() {}",
+    "src/Util.kt" to "fun util() {}"
+  )
+
+  @Test
+  fun `test untouched files share initial texts`() {
+    val taskDir = createTaskDir()
+    val fingerprints = TaskFilesFingerprints()
+
+    val state = fingerprints.getTaskState(initialState, taskDir)
+
+    assertEquals(initialState, state)
+    assertSame(initialState["src/Main.kt"], state["src/Main.kt"])
+    assertSame(initialState["src/Util.kt"], state["src/Util.kt"])
+  }
+
+  @Test
+  fun `test unsaved document changes are detected`() {
+    val taskDir = createTaskDir()
+    val fingerprints = TaskFilesFingerprints()
+    fingerprints.getTaskState(initialState, taskDir)
+
+    val document = FileDocumentManager.getInstance().getDocument(taskDir.findFileByRelativePath("src/Main.kt")!!)!!
+    WriteCommandAction.runWriteCommandAction(project) {
+      document.insertString(0, "// comment\n")
+    }
+
+    val state = fingerprints.getTaskState(initialState, taskDir)
+    assertEquals("// comment\nfun main() {}", state["src/Main.kt"])
+    assertSame(initialState["src/Util.kt"], state["src/Util.kt"])
+  }
+
+  @Test
+  fun `test external file changes are detected`() {
+    val taskDir = createTaskDir()
+    val fingerprints = TaskFilesFingerprints()
+    fingerprints.getTaskState(initialState, taskDir)
+
+    runWriteAction {
+      VfsUtil.saveText(taskDir.findFileByRelativePath("src/Util.kt")!!, "fun util() = 42")
+    }
+
+    val state = fingerprints.getTaskState(initialState, taskDir)
+    assertEquals("fun util() = 42", state["src/Util.kt"])
+  }
+
+  @Test
+  fun `test removed files are not in state`() {
+    val taskDir = createTaskDir()
+    val fingerprints = TaskFilesFingerprints()
+    fingerprints.getTaskState(initialState, taskDir)
+
+    runWriteAction {
+      taskDir.findFileByRelativePath("src/Util.kt")!!.delete(this)
+    }
+
+    val state = fingerprints.getTaskState(initialState, taskDir)
+    assertEquals(setOf("src/Main.kt"), state.keys)
+  }
+
+  private fun createTaskDir(): VirtualFile {
+    for ((path, text) in initialState) {
+      myFixture.addFileToProject("task/$path", text)
+    }
+    return myFixture.findFileInTempDir("task")
+  }
+}
@@ -0,0 +1,111 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.openapi.application.ApplicationListener
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.editor.EditorFactory
+import com.intellij.openapi.editor.event.DocumentEvent
+import com.intellij.openapi.editor.event.DocumentListener
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.vfs.VirtualFile
+import org.hyperskill.academy.learning.EduTestCase
+import org.hyperskill.academy.learning.courseDir
+import org.hyperskill.academy.learning.courseFormat.ext.getDir
+import org.hyperskill.academy.learning.courseFormat.tasks.Task
+import org.junit.Test
+
+class UserChangesApplyTest : EduTestCase() {
+
+  override fun createCourse() {
+    courseWithFiles {
+      frameworkLesson("lesson1") {
+        eduTask("task1") {
+          taskFile("src/Task.kt", "fun foo() {}")
+          taskFile("src/Baz.kt", "fun baz() {}")
+          taskFile("src/Bar.kt", "fun bar() {}")
+        }
+      }
+    }
+  }
+
+  @Test
+  fun `test changes of several files are applied to documents`() {
+    val task = findTask(0, 0)
+    val taskDir = task.getDir(project.courseDir)!!
+
+    UserChanges(
+      listOf(
+        Change.ChangeFile("src/Task.kt", "fun foo() = 1"),
+        Change.ChangeFile("src/Baz.kt", "fun baz() = 2")
+      )
+    ).apply(project, taskDir, task)
+
+    assertEquals("fun foo() = 1", taskDir.documentText("src/Task.kt"))
+    assertEquals("fun baz() = 2", taskDir.documentText("src/Baz.kt"))
+    assertEquals("fun bar() {}", taskDir.documentText("src/Bar.kt"))
+  }
+
+  @Test
+  fun `test change tracking is suppressed for all task files while changes are applied`() {
+    val task = findTask(0, 0)
+    val taskDir = task.getDir(project.courseDir)!!
+    val trackedFilesOnChange = mutableListOf<List<String>>()
+    EditorFactory.getInstance().eventMulticaster.addDocumentListener(object : DocumentListener {
+      override fun documentChanged(event: DocumentEvent) {
+        trackedFilesOnChange += task.trackedFiles()
+      }
+    }, testRootDisposable)
+
+    UserChanges(
+      listOf(
+        Change.ChangeFile("src/Task.kt", "fun foo() = 1"),
+        Change.ChangeFile("src/Baz.kt", "fun baz() = 2")
+      )
+    ).apply(project, taskDir, task)
+
+    assertEquals(listOf(emptyList<String>(), emptyList()), trackedFilesOnChange)
+    for (taskFile in task.taskFiles.values) {
+      assertTrue("Tracking of `${taskFile.name}` must be restored", taskFile.isTrackChanges)
+    }
+  }
+
+  @Test
+  fun `test changes of several files are applied in a single write action`() {
+    val task = findTask(0, 0)
+    val taskDir = task.getDir(project.courseDir)!!
+    var writeActionDepth = 0
+    var writeActionsCount = 0
+    val writeActionsOnChange = mutableListOf<Int>()
+    // nested write actions are counted as a part of the outermost one
+    ApplicationManager.getApplication().addApplicationListener(object : ApplicationListener {
+      override fun writeActionStarted(action: Any) {
+        if (writeActionDepth++ == 0) writeActionsCount++
+      }
+
+      override fun writeActionFinished(action: Any) {
+        writeActionDepth--
+      }
+    }, testRootDisposable)
+    EditorFactory.getInstance().eventMulticaster.addDocumentListener(object : DocumentListener {
+      override fun documentChanged(event: DocumentEvent) {
+        writeActionsOnChange += writeActionsCount
+      }
+    }, testRootDisposable)
+
+    UserChanges(
+      listOf(
+        Change.ChangeFile("src/Task.kt", "fun foo() = 1"),
+        Change.ChangeFile("src/Baz.kt", "fun baz() = 2")
+      )
+    ).apply(project, taskDir, task)
+
+    assertEquals(1, writeActionsCount)
+    assertEquals(listOf(1, 1), writeActionsOnChange)
+  }
+
+  private fun Task.trackedFiles(): List<String> = taskFiles.values.filter { it.isTrackChanges }.map { it.name }
+
+  private fun VirtualFile.documentText(path: String): String {
+    val file = findFileByRelativePath(path) ?: error("Can't find `$path`")
+    return FileDocumentManager.getInstance().getDocument(file)!!.text
+  }
+}
@@ -0,0 +1,97 @@
+package org.hyperskill.academy.learning.framework.impl
+
+import com.intellij.util.io.DataInputOutputUtil
+import com.intellij.util.io.UnsyncByteArrayInputStream
+import com.intellij.util.io.UnsyncByteArrayOutputStream
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+class UserChangesDeltaTest {
+
+  private val initialText = (1..1000).joinToString("\n") { "line $it" }
+  private val changedText = initialText.replace("line 500", "changed line 500")
+  private val initialState = mapOf("src/Main.kt" to initialText)
+
+  @Test
+  fun `test changed file is stored as delta`() {
+    val changes = UserChanges(listOf(Change.ChangeFile("src/Main.kt", changedText)), 1)
+
+    val fullSize = serialize(changes, emptyMap()).size
+    val deltaBytes = serialize(changes, initialState)
+    assertTrue("delta record must be much smaller than the full one", deltaBytes.size * 10 < fullSize)
+
+    val restored = deserialize(deltaBytes) { initialState[it] }
+    assertEquals(changes.changes, restored.changes)
+    assertEquals(1, restored.timestamp)
+  }
+
+  @Test
+  fun `test delta against changed initial text is reported as unresolved`() {
+    val changes = UserChanges(listOf(Change.ChangeFile("src/Main.kt", changedText), Change.AddFile("src/New.kt", "new")), 1)
+    val bytes = serialize(changes, initialState)
+
+    val restored = deserialize(bytes) { "another initial text" }
+    assertEquals(listOf(Change.AddFile("src/New.kt", "new")), restored.changes)
+    assertEquals(listOf("src/Main.kt"), restored.unresolvedPaths)
+  }
+
+  @Test
+  fun `test delta is not applied to initial text with the same hash code`() {
+    // "Aa" and "BB" have the same hash code, so these texts have equal lengths and hash codes
+    val initial = "Aa$initialText"
+    val colliding = "BB$initialText"
+    assertEquals(initial.hashCode(), colliding.hashCode())
+
+    val changes = UserChanges(listOf(Change.ChangeFile("src/Main.kt", "Aa$changedText")), 1)
+    val bytes = serialize(changes, mapOf("src/Main.kt" to initial))
+
+    val restored = deserialize(bytes) { colliding }
+    assertTrue(restored.changes.isEmpty())
+    assertEquals(listOf("src/Main.kt"), restored.unresolvedPaths)
+  }
+
+  @Test
+  fun `test delta verified by hash code can be read`() {
+    val delta = TextDelta.compute(initialText, changedText)
+    val output = UnsyncByteArrayOutputStream()
+    DataOutputStream(output).use { out ->
+      DataInputOutputUtil.writeINT(out, 1)
+      out.writeInt(2) // ChangeFile
+      out.writeUTF("src/Main.kt")
+      out.writeByte(1) // delta verified by hash code
+      DataInputOutputUtil.writeINT(out, initialText.length)
+      out.writeInt(initialText.hashCode())
+      DataInputOutputUtil.writeINT(out, delta.prefixLength)
+      DataInputOutputUtil.writeINT(out, delta.suffixLength)
+      val insertedBytes = delta.insertedText.toByteArray(Charsets.UTF_8)
+      DataInputOutputUtil.writeINT(out, insertedBytes.size)
+      out.write(insertedBytes)
+      DataInputOutputUtil.writeLONG(out, 1)
+    }
+
+    val restored = deserialize(output.toByteArray()) { initialState[it] }
+    assertEquals(listOf(Change.ChangeFile("src/Main.kt", changedText)), restored.changes)
+  }
+
+  @Test
+  fun `test delta keeps surrogate pairs`() {
+    val initial = "😀".repeat(100) + "a".repeat(100)
+    val changed = "😀".repeat(100) + "😁" + "a".repeat(100)
+    val delta = TextDelta.compute(initial, changed)
+
+    assertEquals(changed, delta.applyTo(initial))
+    assertEquals(delta.insertedText, String(delta.insertedText.toByteArray(Charsets.UTF_8), Charsets.UTF_8))
+  }
+
+  private fun serialize(changes: UserChanges, initialState: FLTaskState): ByteArray {
+    val output = UnsyncByteArrayOutputStream()
+    DataOutputStream(output).use { changes.write(it, initialState) }
+    return output.toByteArray()
+  }
+
+  private fun deserialize(bytes: ByteArray, initialText: (String) -> String?): UserChanges =
+    DataInputStream(UnsyncByteArrayInputStream(bytes)).use { UserChanges.read(it, initialText) }
+}
@@ -1,13 +1,23 @@
 package org.hyperskill.academy.learning.framework.impl.migration
 
 import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.util.io.ByteArraySequence
+import com.intellij.util.io.UnsyncByteArrayOutputStream
 import org.hyperskill.academy.learning.course
 import org.hyperskill.academy.learning.courseGeneration.CourseGenerationTestBase
 import org.hyperskill.academy.learning.framework.impl.Change
+import org.hyperskill.academy.learning.framework.impl.CorruptedFrameworkRecordException
+import org.hyperskill.academy.learning.framework.impl.FLTaskState
 import org.hyperskill.academy.learning.framework.impl.FrameworkLessonManagerImpl
 import org.hyperskill.academy.learning.framework.impl.FrameworkStorage
+import org.hyperskill.academy.learning.framework.impl.FrameworkStorageData
+import org.hyperskill.academy.learning.framework.impl.FrameworkStorageMigrationJournal
+import org.hyperskill.academy.learning.framework.impl.UserChanges
 import org.hyperskill.academy.learning.newproject.EmptyProjectSettings
 import org.junit.Test
+import java.io.DataOutput
+import java.io.DataOutputStream
+import kotlin.io.path.exists
 
 class FrameworkStorageMigrationTest : CourseGenerationTestBase<EmptyProjectSettings>() {
 
@@ -46,6 +56,92 @@ class FrameworkStorageMigrationTest : CourseGenerationTestBase<EmptyProjectSetti
     assertEquals(-1, newChanges.timestamp)
   }
 
+  @Test
+  fun `test migrate from 1 to 2`() {
+    val storage = createStorage()
+    val oldChanges = UserChanges1(listOf(Change.AddFile("foo/bar.txt", "FooBar"), Change.ChangeFile("foo/baz.txt", "Baz")), 42)
+
+    val record = storage.createRecordWithData(oldChanges)
+    storage.migrate(2)
+
+    val newChanges = storage.readStream(record).use { UserChanges.read(it) }
+    assertEquals(oldChanges.changes, newChanges.changes)
+    assertEquals(42, newChanges.timestamp)
+  }
+
+  @Test
+  fun `test migrate from 2 to 3`() {
+    val storage = createStorage()
+    val initialState = mapOf("foo/baz.txt" to "fun main() {\n" + "  println(42)\n".repeat(20) + "}\n")
+    val changedText = initialState.getValue("foo/baz.txt").replace("}", "  println(0)\n}")
+    val oldChanges = UserChanges(listOf(Change.AddFile("foo/bar.txt", "FooBar"), Change.ChangeFile("foo/baz.txt", changedText)), 42)
+
+    val record = storage.createRecordWithData(UserChanges2(oldChanges, initialState))
+    storage.migrate(3)
+
+    // deltas written in version 2 are still applicable after the migration
+    val newChanges = storage.getUserChanges(record) { initialState[it] }
+    assertEquals(oldChanges.changes, newChanges.changes)
+    assertEquals(42, newChanges.timestamp)
+  }
+
+  @Test
+  fun `test interrupted migration is resumed`() {
+    val storage = createStorage()
+    val firstChanges = UserChanges0(listOf(Change.AddFile("foo/bar.txt", "Foo")))
+    val secondChanges = UserChanges0(listOf(Change.AddFile("foo/baz.txt", "Baz")))
+    val firstRecord = storage.createRecordWithData(firstChanges)
+    val secondRecord = storage.createRecordWithData(secondChanges)
+
+    // the migration was interrupted right after the first record had been converted and written
+    val convertedFirstRecord = UnsyncByteArrayOutputStream().also { output ->
+      DataOutputStream(output).use { UserChanges1(firstChanges.changes, -1).write(it) }
+    }.toByteArray()
+    storage.writeBytes(firstRecord, ByteArraySequence(convertedFirstRecord), false)
+    val journalPath = FrameworkLessonManagerImpl.constructStoragePath(project).resolveSibling("storage.migration")
+    FrameworkStorageMigrationJournal(journalPath).write(FrameworkStorageMigrationJournal.Entry(0, 1, listOf(firstRecord to convertedFirstRecord)))
+
+    storage.migrate(1)
+
+    assertEquals(firstChanges.changes, storage.readStream(firstRecord).use(UserChanges1::read).changes)
+    assertEquals(secondChanges.changes, storage.readStream(secondRecord).use(UserChanges1::read).changes)
+    assertFalse(journalPath.exists())
+  }
+
+  @Test
+  fun `test long texts`() {
+    val storage = createStorage()
+    storage.migrate(FrameworkLessonManagerImpl.VERSION)
+    val longText = "a".repeat(100_000)
+
+    // texts are not limited to 64 KB since version 2
+    val record = storage.updateUserChanges(-1, UserChanges(listOf(Change.AddFile("foo/long.txt", longText))))
+    assertEquals(longText, storage.getUserChanges(record).changes.single().text)
+  }
+
+  @Test
+  fun `test corrupted record is detected`() {
+    val storage = createStorage()
+    storage.migrate(FrameworkLessonManagerImpl.VERSION)
+    val text = "fun main() {}\n".repeat(100)
+
+    val record = storage.updateUserChanges(-1, UserChanges(listOf(Change.ChangeFile("foo/bar.txt", text))))
+    val bytes = storage.readBytes(record)
+    bytes[bytes.size / 2] = (bytes[bytes.size / 2] + 1).toByte()
+    storage.writeBytes(record, ByteArraySequence(bytes), false)
+
+    assertThrows(CorruptedFrameworkRecordException::class.java) {
+      storage.getUserChanges(record)
+    }
+  }
+
+  /**
+   * Record of version 2: [UserChanges] without an envelope
+   */
+  private class UserChanges2(private val changes: UserChanges, private val initialState: FLTaskState) : FrameworkStorageData {
+    override fun write(out: DataOutput) = changes.write(out, initialState)
+  }
+
   private fun createStorage(): FrameworkStorage {
     val storage = FrameworkStorage(FrameworkLessonManagerImpl.constructStoragePath(project))
     Disposer.register(testRootDisposable, storage)
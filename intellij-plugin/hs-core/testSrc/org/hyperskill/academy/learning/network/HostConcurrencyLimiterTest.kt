@@ -0,0 +1,84 @@
+package org.hyperskill.academy.learning.network
+
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class HostConcurrencyLimiterTest {
+  private lateinit var server: MockWebServer
+  private val running = AtomicInteger()
+  private val maxRunning = AtomicInteger()
+
+  @Before
+  fun setUp() {
+    server = MockWebServer()
+    server.dispatcher = object : Dispatcher() {
+      override fun dispatch(request: RecordedRequest): MockResponse {
+        val current = running.incrementAndGet()
+        maxRunning.accumulateAndGet(current, ::maxOf)
+        Thread.sleep(50)
+        running.decrementAndGet()
+        return MockResponse().setBody("ok")
+      }
+    }
+    server.start()
+  }
+
+  @After
+  fun tearDown() {
+    server.shutdown()
+  }
+
+  @Test
+  fun `test concurrent requests to host are limited`() {
+    val client = OkHttpClient.Builder()
+      .addInterceptor(HostConcurrencyLimiter { LIMIT })
+      .build()
+
+    val executor = Executors.newFixedThreadPool(REQUESTS)
+    try {
+      val responses = (0 until REQUESTS).map {
+        executor.submit(Callable {
+          client.newCall(Request.Builder().url(server.url("api/steps")).build()).execute().use { it.body!!.string() }
+        })
+      }
+      for (response in responses) {
+        assertEquals("ok", response.get(10, TimeUnit.SECONDS))
+      }
+    }
+    finally {
+      executor.shutdownNow()
+    }
+
+    assertTrue("At most $LIMIT requests must run at the same time, but ${maxRunning.get()} did", maxRunning.get() <= LIMIT)
+    assertEquals(REQUESTS, server.requestCount)
+  }
+
+  @Test
+  fun `test limits parsing`() {
+    val limits = parseLimits("hyperskill.org=4, *=2, broken, negative=-1, nan=x", 8)
+    assertEquals(4, limits("hyperskill.org"))
+    assertEquals(2, limits("example.com"))
+    assertEquals(2, limits("negative"))
+
+    val defaultLimits = parseLimits("", 8)
+    assertEquals(8, defaultLimits("hyperskill.org"))
+  }
+
+  companion object {
+    private const val LIMIT = 2
+    private const val REQUESTS = 6
+  }
+}
@@ -0,0 +1,105 @@
+package org.hyperskill.academy.learning.network
+
+import com.intellij.openapi.util.io.FileUtil
+import okhttp3.Cache
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import java.net.HttpURLConnection.HTTP_NOT_MODIFIED
+
+class HttpCacheRevalidationTest {
+  private lateinit var server: MockWebServer
+  private lateinit var cache: Cache
+  private lateinit var client: OkHttpClient
+
+  @Before
+  fun setUp() {
+    server = MockWebServer()
+    server.start()
+    cache = Cache(FileUtil.createTempDirectory("http", "cache"), 1024 * 1024)
+    client = OkHttpClient.Builder()
+      .cache(cache)
+      .addNetworkInterceptor(HttpCacheRevalidationInterceptor())
+      .build()
+  }
+
+  @After
+  fun tearDown() {
+    cache.delete()
+    server.shutdown()
+  }
+
+  @Test
+  fun `test cached response is revalidated with etag`() {
+    server.enqueue(MockResponse().setBody("stages").setHeader("ETag", "\"v1\"").setHeader("Cache-Control", "max-age=3600"))
+    server.enqueue(MockResponse().setResponseCode(HTTP_NOT_MODIFIED).setHeader("ETag", "\"v1\""))
+
+    assertEquals("stages", get("api/stages"))
+    assertEquals("stages", get("api/stages"))
+
+    assertNull(server.takeRequest().getHeader("If-None-Match"))
+    assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+    assertEquals(1, cache.hitCount())
+  }
+
+  @Test
+  fun `test changed response is downloaded again`() {
+    server.enqueue(MockResponse().setBody("old").setHeader("ETag", "\"v1\""))
+    server.enqueue(MockResponse().setBody("new").setHeader("ETag", "\"v2\""))
+    server.enqueue(MockResponse().setResponseCode(HTTP_NOT_MODIFIED).setHeader("ETag", "\"v2\""))
+
+    assertEquals("old", get("api/topics"))
+    assertEquals("new", get("api/topics"))
+    assertEquals("new", get("api/topics"))
+
+    server.takeRequest()
+    assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+    assertEquals("\"v2\"", server.takeRequest().getHeader("If-None-Match"))
+  }
+
+  @Test
+  fun `test no-store requests are not cached`() {
+    server.enqueue(MockResponse().setBody("first").setHeader("ETag", "\"v1\""))
+    server.enqueue(MockResponse().setBody("second").setHeader("ETag", "\"v1\""))
+
+    assertEquals("first", get("api/submissions", noStore = true))
+    assertEquals("second", get("api/submissions", noStore = true))
+
+    server.takeRequest()
+    assertNull(server.takeRequest().getHeader("If-None-Match"))
+    assertEquals(0, cache.hitCount())
+  }
+
+  @Test
+  fun `test responses are not shared between accounts`() {
+    server.enqueue(MockResponse().setBody("stages of user 1").setHeader("ETag", "\"v1\""))
+    server.enqueue(MockResponse().setBody("stages of user 2").setHeader("ETag", "\"v1\""))
+    server.enqueue(MockResponse().setResponseCode(HTTP_NOT_MODIFIED).setHeader("ETag", "\"v1\""))
+
+    assertEquals("stages of user 1", get("api/stages", token = "user1"))
+    assertEquals("stages of user 2", get("api/stages", token = "user2"))
+    assertEquals("stages of user 2", get("api/stages", token = "user2"))
+
+    server.takeRequest()
+    assertNull("Response of another account must not be revalidated", server.takeRequest().getHeader("If-None-Match"))
+    assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+  }
+
+  private fun get(path: String, noStore: Boolean = false, token: String? = null): String {
+    val request = Request.Builder().url(server.url(path))
+    if (token != null) {
+      request.header("Authorization", "Bearer $token")
+    }
+    if (noStore) {
+      val (name, value) = NO_HTTP_CACHE.split(":").map { it.trim() }
+      request.header(name, value)
+    }
+    return client.newCall(request.build()).execute().use { it.body!!.string() }
+  }
+}
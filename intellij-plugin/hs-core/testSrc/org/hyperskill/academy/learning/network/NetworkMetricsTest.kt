@@ -0,0 +1,126 @@
+package org.hyperskill.academy.learning.network
+
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.ResponseBody
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.SocketPolicy
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import retrofit2.Call
+import retrofit2.Retrofit
+import retrofit2.http.GET
+import retrofit2.http.Path
+import java.io.IOException
+
+class NetworkMetricsTest {
+  private lateinit var server: MockWebServer
+  private lateinit var client: OkHttpClient
+  private val metrics = NetworkMetrics()
+
+  @Before
+  fun setUp() {
+    server = MockWebServer()
+    server.start()
+    client = OkHttpClient.Builder()
+      .addInterceptor(NetworkMetricsInterceptor(metrics))
+      .addNetworkInterceptor(NetworkMetricsInterceptor.networkAttemptsCounter)
+      .build()
+  }
+
+  @After
+  fun tearDown() {
+    server.shutdown()
+  }
+
+  @Test
+  fun `test retrofit requests are grouped by path template`() {
+    server.enqueue(MockResponse().setBody("first"))
+    server.enqueue(MockResponse().setBody("second step"))
+    server.enqueue(MockResponse().setResponseCode(404))
+
+    val endpoints = Retrofit.Builder().client(client).baseUrl(server.url("/")).build().create(TestEndpoints::class.java)
+    for (id in 1..3) {
+      endpoints.step(id).execute().let { it.body() ?: it.errorBody() }?.close()
+    }
+
+    val step = metrics.snapshot().single()
+    assertEquals("GET ${server.hostName}/api/steps/{id}", step.endpoint)
+    assertEquals(3, step.count)
+    assertEquals(mapOf("200" to 2L, "404" to 1L), step.statusCodes)
+    assertEquals("first".length + "second step".length.toLong(), step.responseBytes)
+  }
+
+  @Test
+  fun `test numeric path segments are templated without retrofit`() {
+    server.enqueue(MockResponse())
+    get("api/projects/42/additional-files/info")
+
+    assertEquals("GET ${server.hostName}/api/projects/{id}/additional-files/info", metrics.snapshot().single().endpoint)
+  }
+
+  @Test
+  fun `test failures and retries are recorded`() {
+    val retryingClient = client.newBuilder()
+      .addInterceptor { chain ->
+        // retries a request once after a server error, as OkHttp does after a connection failure
+        val response = chain.proceed(chain.request())
+        if (response.code != 503) return@addInterceptor response
+        response.close()
+        chain.proceed(chain.request())
+      }
+      .build()
+    server.enqueue(MockResponse().setResponseCode(503))
+    server.enqueue(MockResponse().setBody("ok"))
+    retryingClient.newCall(Request.Builder().url(server.url("api/stages")).build()).execute().close()
+
+    server.enqueue(MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START))
+    server.enqueue(MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START))
+    try {
+      get("api/topics")
+    }
+    catch (e: IOException) {
+      // expected, the server drops all connections
+    }
+    metrics.recordRetry("GET ${server.hostName}/api/topics")
+
+    val (stages, topics) = metrics.snapshot()
+    assertEquals(1, stages.count)
+    assertEquals(0, stages.failures)
+    assertEquals(1, stages.retries)
+    assertEquals(mapOf("200" to 1L), stages.statusCodes)
+
+    assertEquals(1, topics.failures)
+    assertEquals(mapOf("failed" to 1L), topics.statusCodes)
+    assertTrue(topics.retries >= 1)
+  }
+
+  @Test
+  fun `test dump contains all endpoints`() {
+    server.enqueue(MockResponse())
+    server.enqueue(MockResponse())
+    get("api/stages")
+    get("api/topics")
+
+    val dump = metrics.dump()
+    assertTrue(dump, dump.contains("/api/stages") && dump.contains("/api/topics"))
+    val json = metrics.dumpJson()
+    assertTrue(json, json.contains("\"endpoint\"") && json.contains("\"latencyHistogram\""))
+
+    metrics.reset()
+    assertTrue(metrics.snapshot().isEmpty())
+  }
+
+  private fun get(path: String) {
+    client.newCall(Request.Builder().url(server.url(path)).build()).execute().close()
+  }
+
+  private interface TestEndpoints {
+    @GET("api/steps/{id}")
+    fun step(@Path("id") id: Int): Call<ResponseBody>
+  }
+}
@@ -0,0 +1,168 @@
+package org.hyperskill.academy.learning.network
+
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.Response
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.SocketPolicy
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Before
+import org.junit.Test
+import java.net.SocketTimeoutException
+import java.util.concurrent.TimeUnit
+
+class ResilienceInterceptorTest {
+  private lateinit var server: MockWebServer
+  private val metrics = NetworkMetrics()
+  private val delays = mutableListOf<Long>()
+  private var now = 0L
+
+  @Before
+  fun setUp() {
+    server = MockWebServer()
+    server.start()
+  }
+
+  @After
+  fun tearDown() {
+    server.shutdown()
+  }
+
+  @Test
+  fun `test idempotent requests are retried with backoff`() {
+    server.enqueue(MockResponse().setResponseCode(503))
+    server.enqueue(MockResponse().setResponseCode(502))
+    server.enqueue(MockResponse().setBody("ok"))
+
+    val client = createClient(ResiliencePolicy(baseDelayMillis = 100))
+    get(client, "api/stages").use { assertEquals(200, it.code) }
+
+    assertEquals(3, server.requestCount)
+    assertEquals(listOf(100L, 200L), delays)
+    assertEquals(2, metrics.snapshot().single().retries)
+  }
+
+  @Test
+  fun `test non-idempotent requests are not retried`() {
+    server.enqueue(MockResponse().setResponseCode(503))
+    server.enqueue(MockResponse())
+
+    val client = createClient(ResiliencePolicy())
+    val request = Request.Builder().url(server.url("api/attempts")).post("{}".toRequestBody()).build()
+    client.newCall(request).execute().use { assertEquals(503, it.code) }
+
+    assertEquals(1, server.requestCount)
+  }
+
+  @Test
+  fun `test retries stop after max attempts`() {
+    repeat(3) { server.enqueue(MockResponse().setResponseCode(500)) }
+
+    val client = createClient(ResiliencePolicy(maxAttempts = 2))
+    get(client, "api/stages").use { assertEquals(500, it.code) }
+
+    assertEquals(2, server.requestCount)
+  }
+
+  @Test
+  fun `test retry after header is respected`() {
+    server.enqueue(MockResponse().setResponseCode(429).setHeader("Retry-After", "2"))
+    server.enqueue(MockResponse())
+
+    val client = createClient(ResiliencePolicy(baseDelayMillis = 100))
+    get(client, "api/stages").close()
+
+    assertEquals(listOf(2000L), delays)
+  }
+
+  @Test
+  fun `test connection failures are retried`() {
+    server.enqueue(MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START))
+    server.enqueue(MockResponse())
+
+    val client = createClient(ResiliencePolicy())
+    get(client, "api/stages").use { assertEquals(200, it.code) }
+
+    assertEquals(1, delays.size)
+  }
+
+  @Test
+  fun `test circuit is opened after consecutive failures`() {
+    server.enqueue(MockResponse().setResponseCode(500))
+    server.enqueue(MockResponse().setResponseCode(500))
+    server.enqueue(MockResponse())
+    server.enqueue(MockResponse())
+
+    val client = createClient(ResiliencePolicy(maxAttempts = 1, failureThreshold = 2, openCircuitMillis = 1000))
+    get(client, "api/stages").close()
+    get(client, "api/stages").close()
+    assertThrows(CircuitOpenException::class.java) {
+      get(client, "api/stages").close()
+    }
+    assertEquals(2, server.requestCount)
+
+    now += 1000
+    get(client, "api/stages").use { assertEquals(200, it.code) }
+    get(client, "api/stages").close()
+    assertEquals(4, server.requestCount)
+
+    assertEquals(mapOf("GET ${server.hostName}/api/stages" to 1L), metrics.circuitOpenings())
+    assertEquals(1, metrics.snapshot().single().rejections)
+  }
+
+  @Test
+  fun `test open circuit doesn't affect other endpoints`() {
+    server.enqueue(MockResponse().setResponseCode(500))
+    server.enqueue(MockResponse())
+
+    val client = createClient(ResiliencePolicy(maxAttempts = 1, failureThreshold = 1))
+    get(client, "api/stages").close()
+    assertThrows(CircuitOpenException::class.java) {
+      get(client, "api/stages").close()
+    }
+
+    get(client, "api/topics").use { assertEquals(200, it.code) }
+    assertEquals(2, server.requestCount)
+  }
+
+  @Test
+  fun `test non-idempotent requests are not rejected by open circuit`() {
+    server.enqueue(MockResponse().setResponseCode(500))
+    server.enqueue(MockResponse().setResponseCode(500))
+    server.enqueue(MockResponse())
+
+    val client = createClient(ResiliencePolicy(maxAttempts = 1, failureThreshold = 1))
+    val request = Request.Builder().url(server.url("api/attempts")).post("{}".toRequestBody()).build()
+    client.newCall(request).execute().use { assertEquals(500, it.code) }
+    client.newCall(request).execute().use { assertEquals(500, it.code) }
+    client.newCall(request).execute().use { assertEquals(200, it.code) }
+
+    assertEquals(3, server.requestCount)
+    assertEquals(emptyMap<String, Long>(), metrics.circuitOpenings())
+  }
+
+  @Test
+  fun `test timeouts are applied per endpoint`() {
+    server.enqueue(MockResponse().setHeadersDelay(3, TimeUnit.SECONDS))
+
+    val client = createClient(ResiliencePolicy(maxAttempts = 1, timeoutSeconds = { if (it == "api/slow") 1 else 0 }))
+    assertThrows(SocketTimeoutException::class.java) {
+      get(client, "api/slow").close()
+    }
+    assertEquals(1, metrics.snapshot().single().timeouts)
+  }
+
+  private fun createClient(policy: ResiliencePolicy): OkHttpClient =
+    OkHttpClient.Builder()
+      .retryOnConnectionFailure(false)
+      .addInterceptor(NetworkMetricsInterceptor(metrics))
+      .addInterceptor(ResilienceInterceptor(policy, metrics, { now }, { delays += it }, { it }))
+      .build()
+
+  private fun get(client: OkHttpClient, path: String): Response =
+    client.newCall(Request.Builder().url(server.url(path)).build()).execute()
+}
@@ -0,0 +1,93 @@
+package org.hyperskill.academy.learning.network
+
+import org.hyperskill.academy.learning.EduTestCase
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class SingleFlightTest : EduTestCase() {
+
+  @Test
+  fun `test concurrent calls with the same key are coalesced`() {
+    val singleFlight = SingleFlight<String>()
+    val calls = AtomicInteger()
+    val started = CountDownLatch(1)
+    val release = CountDownLatch(1)
+
+    val executor = Executors.newFixedThreadPool(THREADS)
+    try {
+      val leader = executor.submit(Callable {
+        singleFlight.execute("key") {
+          calls.incrementAndGet()
+          started.countDown()
+          release.await()
+          "result"
+        }
+      })
+      assertTrue(started.await(10, TimeUnit.SECONDS))
+
+      val followers = (1 until THREADS).map {
+        executor.submit(Callable { singleFlight.execute("key") { calls.incrementAndGet(); "another result" } })
+      }
+      // give the followers time to join the running call
+      Thread.sleep(100)
+      release.countDown()
+
+      assertEquals("result", leader.get(10, TimeUnit.SECONDS))
+      for (follower in followers) {
+        val result = follower.get(10, TimeUnit.SECONDS)
+        // a follower that came after the leader finished runs its own call
+        assertTrue(result == "result" || result == "another result")
+      }
+      assertEquals(THREADS.toLong(), singleFlight.coalescedCalls + calls.get())
+      assertTrue("Followers must wait for the running call", singleFlight.coalescedCalls > 0)
+    }
+    finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  fun `test calls with different keys are not coalesced`() {
+    val singleFlight = SingleFlight<String>()
+    assertEquals(1, singleFlight.execute("a") { 1 })
+    assertEquals(2, singleFlight.execute("b") { 2 })
+    assertEquals(3, singleFlight.execute("a") { 3 })
+    assertEquals(0, singleFlight.coalescedCalls)
+  }
+
+  @Test
+  fun `test failed call is run again by waiting call`() {
+    val singleFlight = SingleFlight<String>()
+    val started = CountDownLatch(1)
+    val release = CountDownLatch(1)
+
+    val executor = Executors.newFixedThreadPool(2)
+    try {
+      val failing = executor.submit(Callable {
+        singleFlight.execute<String>("key") {
+          started.countDown()
+          release.await()
+          throw IllegalStateException("failed")
+        }
+      })
+      assertTrue(started.await(10, TimeUnit.SECONDS))
+      val waiting = executor.submit(Callable { singleFlight.execute("key") { "result" } })
+      Thread.sleep(50)
+      release.countDown()
+
+      assertEquals("result", waiting.get(10, TimeUnit.SECONDS))
+      assertTrue(runCatching { failing.get(10, TimeUnit.SECONDS) }.isFailure)
+    }
+    finally {
+      executor.shutdownNow()
+    }
+  }
+
+  companion object {
+    private const val THREADS = 4
+  }
+}
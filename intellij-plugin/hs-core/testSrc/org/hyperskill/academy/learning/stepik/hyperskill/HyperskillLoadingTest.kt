@@ -9,6 +9,7 @@ import org.hyperskill.academy.learning.actions.PreviousTaskAction
 import org.hyperskill.academy.learning.courseFormat.EduFormatNames.HYPERSKILL_TOPICS
 import org.hyperskill.academy.learning.courseFormat.TaskFile
 import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillCourse
+import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillTopic
 import org.hyperskill.academy.learning.stepik.hyperskill.api.HyperskillConnector
 import org.hyperskill.academy.learning.stepik.hyperskill.api.HyperskillSolutionLoader
 import org.hyperskill.academy.learning.stepik.hyperskill.api.MockHyperskillConnector
@@ -449,6 +450,39 @@ class HyperskillLoadingTest : SolutionLoadingTestBase() {
     assertEquals(3, course.taskToTopics[0]?.size)
   }
 
+  @Test
+  fun `test topics of other stages are loaded if one stage fails`() {
+    mockConnector.withResponseHandler(testRootDisposable) { request, path ->
+      val result = TOPICS_REQUEST_RE.matchEntire(path) ?: return@withResponseHandler null
+      if (request.hasParams("stage" to "2")) return@withResponseHandler MockResponseFactory.notFound()
+      if (result.groupValues[1] == "1") mockResponse("topics_response_2.json") else mockResponse("response_empty.json")
+    }
+    val course = createHyperskillCourse()
+    mockConnector.fillTopics(project, course)
+    assertEquals(setOf(0, 2), course.taskToTopics.keys)
+  }
+
+  @Test
+  fun `test previously loaded topics are kept if their stage fails to load`() {
+    mockConnector.withResponseHandler(testRootDisposable) { request, path ->
+      val result = TOPICS_REQUEST_RE.matchEntire(path) ?: return@withResponseHandler null
+      if (request.hasParams("stage" to "2")) return@withResponseHandler MockResponseFactory.notFound()
+      if (result.groupValues[1] == "1") mockResponse("topics_response_2.json") else mockResponse("response_empty.json")
+    }
+    val course = createHyperskillCourse()
+    val previousTopic = HyperskillTopic().apply {
+      id = 1
+      title = "Previously loaded topic"
+      theoryId = 1
+    }
+    course.taskToTopics = mutableMapOf(1 to listOf(previousTopic))
+
+    mockConnector.fillTopics(project, course)
+
+    assertEquals(setOf(0, 1, 2), course.taskToTopics.keys)
+    assertEquals(listOf(previousTopic), course.taskToTopics[1])
+  }
+
   @Test
   fun `test do not apply old submissions on new user changes`() =
     doApplySubmissionOnNonCurrentTaskTest("submission_stage1_ancient_submission.json") {
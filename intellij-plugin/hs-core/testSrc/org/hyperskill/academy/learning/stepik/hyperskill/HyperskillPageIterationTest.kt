@@ -0,0 +1,78 @@
+package org.hyperskill.academy.learning.stepik.hyperskill
+
+import org.hyperskill.academy.learning.EduTestCase
+import org.hyperskill.academy.learning.Err
+import org.hyperskill.academy.learning.Ok
+import org.hyperskill.academy.learning.Result
+import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillStage
+import org.hyperskill.academy.learning.stepik.hyperskill.api.PaginationMetaData
+import org.hyperskill.academy.learning.stepik.hyperskill.api.StagesList
+import org.junit.Test
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class HyperskillPageIterationTest : EduTestCase() {
+
+  @Test
+  fun `test single page`() {
+    val requestedPages = ConcurrentHashMap.newKeySet<Int>()
+    val result = withPageIteration { page ->
+      requestedPages += page
+      Ok(page(page, hasNext = false))
+    }
+
+    assertEquals(listOf(1), result.pageNumbers())
+    assertEquals(setOf(1), requestedPages)
+  }
+
+  @Test
+  fun `test pages are returned in order`() {
+    val result = withPageIteration { page ->
+      // later pages are loaded faster
+      Thread.sleep((20L - page).coerceAtLeast(0))
+      if (page > PAGES_COUNT) Err("Page $page doesn't exist") else Ok(page(page, hasNext = page < PAGES_COUNT))
+    }
+
+    assertEquals((1..PAGES_COUNT).toList(), result.pageNumbers())
+  }
+
+  @Test
+  fun `test pages are loaded concurrently`() {
+    // the second and the third pages are loaded in the same window, so each of them waits for the other one
+    val latch = CountDownLatch(2)
+    val result = withPageIteration { page ->
+      if (page > 1) {
+        latch.countDown()
+        if (!latch.await(10, TimeUnit.SECONDS)) return@withPageIteration Err("Page $page is loaded sequentially")
+      }
+      Ok(page(page, hasNext = page < 3))
+    }
+
+    assertEquals(listOf(1, 2, 3), result.pageNumbers())
+  }
+
+  @Test
+  fun `test error in middle page`() {
+    val result = withPageIteration { page ->
+      if (page == 5) Err("Failed to load page") else Ok(page(page, hasNext = page < PAGES_COUNT))
+    }
+
+    assertEquals("Failed to load page", (result as Err).error)
+  }
+
+  private fun Result<List<StagesList>, String>.pageNumbers(): List<Int> = when (this) {
+    is Ok -> value.map { it.stages.single().id }
+    is Err -> throw AssertionError(error)
+  }
+
+  private fun page(number: Int, hasNext: Boolean): StagesList = StagesList().apply {
+    // the page number is stored as the stage id to check the order of pages
+    stages = listOf(HyperskillStage(number, "", number))
+    meta = PaginationMetaData().also { it.hasNext = hasNext }
+  }
+
+  companion object {
+    private const val PAGES_COUNT = 11
+  }
+}
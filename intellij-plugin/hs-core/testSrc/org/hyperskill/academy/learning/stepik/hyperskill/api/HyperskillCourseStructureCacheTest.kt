@@ -0,0 +1,210 @@
+package org.hyperskill.academy.learning.stepik.hyperskill.api
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.util.io.FileUtil
+import okhttp3.mockwebserver.MockResponse
+import org.hyperskill.academy.learning.*
+import org.hyperskill.academy.learning.courseFormat.EduFile
+import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillCourse
+import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillProject
+import org.hyperskill.academy.learning.courseFormat.hyperskill.HyperskillStage
+import org.hyperskill.academy.learning.stepik.api.CourseAdditionalInfo
+import org.hyperskill.academy.learning.stepik.hyperskill.logInFakeHyperskillUser
+import org.hyperskill.academy.learning.stepik.hyperskill.logOutFakeHyperskillUser
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.ConcurrentLinkedQueue
+
+class HyperskillCourseStructureCacheTest : EduTestCase() {
+  private val mockConnector: MockHyperskillConnector get() = HyperskillConnector.getInstance() as MockHyperskillConnector
+
+  private lateinit var cacheDir: Path
+  private var now = 0L
+  private var stageTitle = "Stage 1"
+  private val requestedPaths = ConcurrentLinkedQueue<String>()
+
+  override fun setUp() {
+    super.setUp()
+    logInFakeHyperskillUser()
+    cacheDir = Files.createTempDirectory("hyperskill-course-cache")
+    mockConnector.courseStructureCache = createCache()
+  }
+
+  override fun tearDown() {
+    try {
+      mockConnector.courseStructureCache = null
+      logOutFakeHyperskillUser()
+      FileUtil.delete(cacheDir.toFile())
+    }
+    catch (e: Throwable) {
+      addSuppressedException(e)
+    }
+    finally {
+      super.tearDown()
+    }
+  }
+
+  override fun getTestDataPath(): String = super.getTestDataPath() + "/stepik/hyperskill/"
+
+  @Test
+  fun `test course structure is available offline`() {
+    val server = startServer()
+    assertEquals(PROJECT_TITLE, mockConnector.getProject(PROJECT_ID).value().title)
+    assertEquals(listOf(stageTitle), mockConnector.getStages(PROJECT_ID)?.map { it.title })
+    mockConnector.getStepSource(STEP_ID).value()
+
+    Disposer.dispose(server)
+    // the cache is read from the disk after restart
+    mockConnector.courseStructureCache = createCache()
+
+    assertEquals(PROJECT_TITLE, mockConnector.getProject(PROJECT_ID).value().title)
+    assertEquals(listOf(stageTitle), mockConnector.getStages(PROJECT_ID)?.map { it.title })
+    val stepSource = mockConnector.getStepSource(STEP_ID).value()
+    assertEquals(STEP_TITLE, stepSource.title)
+    assertEquals("code", stepSource.block?.name)
+  }
+
+  @Test
+  fun `test cached entries are not requested again`() {
+    startServer()
+    mockConnector.getStages(PROJECT_ID)
+    mockConnector.getStages(PROJECT_ID)
+
+    assertEquals(listOf("/api/stages"), requestedPaths.toList())
+  }
+
+  @Test
+  fun `test stale entries are reloaded when requested`() {
+    startServer()
+    mockConnector.getStages(PROJECT_ID)
+    stageTitle = "Renamed stage"
+
+    now += MAX_AGE_MS
+    assertEquals(listOf("Renamed stage"), mockConnector.getStages(PROJECT_ID)?.map { it.title })
+    assertEquals(listOf("/api/stages", "/api/stages"), requestedPaths.toList())
+  }
+
+  @Test
+  fun `test stale entries are returned if they fail to reload`() {
+    val server = startServer()
+    assertEquals(PROJECT_TITLE, mockConnector.getProject(PROJECT_ID).value().title)
+    mockConnector.getStages(PROJECT_ID)
+    mockConnector.getStepSource(STEP_ID).value()
+
+    Disposer.dispose(server)
+    now += MAX_AGE_MS
+
+    assertEquals(PROJECT_TITLE, mockConnector.getProject(PROJECT_ID).value().title)
+    assertEquals(listOf("Stage 1"), mockConnector.getStages(PROJECT_ID)?.map { it.title })
+    assertEquals(STEP_TITLE, mockConnector.getStepSource(STEP_ID).value().title)
+  }
+
+  @Test
+  fun `test stale entries are reloaded by sync`() {
+    startServer()
+    mockConnector.getStages(PROJECT_ID)
+    stageTitle = "Renamed stage"
+
+    mockConnector.syncCourseStructure(course())
+    assertEquals("Fresh entries must not be reloaded", listOf("Stage 1"), mockConnector.getStages(PROJECT_ID)?.map { it.title })
+
+    now += MAX_AGE_MS
+    mockConnector.syncCourseStructure(course())
+    assertEquals(listOf("Renamed stage"), mockConnector.getStages(PROJECT_ID)?.map { it.title })
+    assertEquals("Synced entries must not be reloaded again", listOf("/api/stages", "/api/stages"), requestedPaths.filter { it == "/api/stages" })
+    assertFalse("Entries that aren't cached must not be loaded by sync", "/api/projects/$PROJECT_ID" in requestedPaths)
+  }
+
+  @Test
+  fun `test stale entries are kept if sync fails`() {
+    val server = startServer()
+    mockConnector.getStages(PROJECT_ID)
+
+    Disposer.dispose(server)
+    now += MAX_AGE_MS
+    mockConnector.syncCourseStructure(course())
+
+    assertEquals(listOf("Stage 1"), mockConnector.getStages(PROJECT_ID)?.map { it.title })
+  }
+
+  @Test
+  fun `test additional files are cached`() {
+    val cache = createCache()
+    val additionalFile = EduFile("build.gradle", "apply plugin: 'java'").apply { isVisible = false }
+    cache.putAdditionalInfo(USER_ID, PROJECT_ID, CourseAdditionalInfo(listOf(additionalFile), solutionsHidden = true))
+
+    val cached = createCache().getAdditionalInfo(USER_ID, PROJECT_ID)?.value ?: error("Additional files must be cached")
+    assertTrue(cached.solutionsHidden)
+    val cachedFile = cached.additionalFiles.single()
+    assertEquals("build.gradle", cachedFile.name)
+    assertEquals("apply plugin: 'java'", cachedFile.contents.textualRepresentation)
+    assertFalse(cachedFile.isVisible)
+  }
+
+  @Test
+  fun `test unused entries are evicted`() {
+    val cache = createCache()
+    cache.putStages(USER_ID, PROJECT_ID, listOf(HyperskillStage(1, "Stage 1", STEP_ID)))
+    cache.putStages(OTHER_USER_ID, PROJECT_ID, listOf(HyperskillStage(1, "Stage 1", STEP_ID)))
+    now = System.currentTimeMillis()
+    val unusedEntry = Files.list(cacheDir.resolve(OTHER_USER_ID.toString())).use { it.toList().single() }
+    Files.setLastModifiedTime(unusedEntry, FileTime.fromMillis(now - 2 * RETENTION_MS))
+
+    cache.evictUnusedEntries(RETENTION_MS)
+
+    assertNotNull(cache.getStages(USER_ID, PROJECT_ID))
+    assertNull(cache.getStages(OTHER_USER_ID, PROJECT_ID))
+    assertFalse("Directories without entries must be deleted", Files.exists(cacheDir.resolve(OTHER_USER_ID.toString())))
+  }
+
+  private fun createCache(): HyperskillCourseStructureCache =
+    HyperskillCourseStructureCache(cacheDir, mockConnector.objectMapper, MAX_AGE_MS) { now }
+
+  private fun course(): HyperskillCourse = HyperskillCourse().apply {
+    hyperskillProject = HyperskillProject().apply { id = PROJECT_ID }
+  }
+
+  /**
+   * Starts serving the project until the returned disposable is disposed
+   */
+  private fun startServer(): Disposable {
+    val server = Disposer.newDisposable(testRootDisposable, "Hyperskill server")
+    mockConnector.withResponseHandler(server) { request, _ ->
+      val path = request.pathWithoutPrams
+      requestedPaths += path
+      when {
+        path == "/api/projects/$PROJECT_ID" -> jsonResponse(ProjectsList().apply {
+          projects = listOf(HyperskillProject().apply {
+            id = PROJECT_ID
+            title = PROJECT_TITLE
+          })
+        })
+        path == "/api/stages" && request.hasParams("project" to PROJECT_ID.toString()) -> jsonResponse(StagesList().apply {
+          meta = PaginationMetaData()
+          stages = listOf(HyperskillStage(1, stageTitle, STEP_ID))
+        })
+        path == "/api/steps" && request.hasParams("ids" to STEP_ID.toString()) -> mockResponse("step_${STEP_ID}_response.json")
+        else -> null
+      }
+    }
+    return server
+  }
+
+  private fun jsonResponse(value: Any): MockResponse = MockResponseFactory.fromString(mockConnector.objectMapper.writeValueAsString(value))
+
+  private fun <T> Result<T, String>.value(): T = onError { throw AssertionError(it) }
+
+  companion object {
+    private const val PROJECT_ID = 86
+    private const val PROJECT_TITLE = "Simple Search Engine"
+    private const val STEP_ID = 2640
+    private const val STEP_TITLE = "Packing bakeries"
+    private const val MAX_AGE_MS = 60_000L
+    private const val RETENTION_MS = 24 * 60 * 60 * 1000L
+    private const val USER_ID = 1
+    private const val OTHER_USER_ID = 2
+  }
+}
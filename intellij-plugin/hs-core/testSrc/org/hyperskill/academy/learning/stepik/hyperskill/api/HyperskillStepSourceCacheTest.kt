@@ -0,0 +1,56 @@
+package org.hyperskill.academy.learning.stepik.hyperskill.api
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class HyperskillStepSourceCacheTest {
+  private var now = 0L
+  private val cache = HyperskillStepSourceCache(TTL) { now }
+
+  @Test
+  fun `test cached step sources are returned`() {
+    val stepSource = stepSource(1)
+    cache.put(USER, listOf(stepSource, stepSource(2)))
+
+    val cached = cache.get(USER, listOf(1, 3))
+    assertEquals(setOf(1), cached.keys)
+    assertSame(stepSource, cached[1])
+  }
+
+  @Test
+  fun `test step sources expire`() {
+    cache.put(USER, listOf(stepSource(1)))
+
+    now += TTL - 1
+    assertEquals(setOf(1), cache.get(USER, listOf(1)).keys)
+
+    now += 1
+    assertTrue(cache.get(USER, listOf(1)).isEmpty())
+  }
+
+  @Test
+  fun `test step sources of another user are not returned`() {
+    cache.put(USER, listOf(stepSource(1)))
+    assertTrue(cache.get(USER + 1, listOf(1)).isEmpty())
+
+    cache.put(USER + 1, listOf(stepSource(2)))
+    assertTrue("Step sources of the previous user must be dropped", cache.get(USER, listOf(1)).isEmpty())
+    assertEquals(setOf(2), cache.get(USER + 1, listOf(1, 2)).keys)
+  }
+
+  @Test
+  fun `test disabled cache`() {
+    val disabledCache = HyperskillStepSourceCache(0) { now }
+    disabledCache.put(USER, listOf(stepSource(1)))
+    assertTrue(disabledCache.get(USER, listOf(1)).isEmpty())
+  }
+
+  private fun stepSource(stepId: Int): HyperskillStepSource = HyperskillStepSource().apply { id = stepId }
+
+  companion object {
+    private const val TTL = 1000L
+    private const val USER = 42
+  }
+}
@@ -12,6 +12,8 @@ import org.hyperskill.academy.learning.stepik.hyperskill.confirmSubscription
 import org.hyperskill.academy.learning.stepik.hyperskill.webSocketConfiguration
 import org.intellij.lang.annotations.Language
 import org.junit.Test
+import java.net.HttpURLConnection.HTTP_INTERNAL_ERROR
+import java.util.concurrent.atomic.AtomicInteger
 
 class HyperskillCheckCodeTaskTest : HyperskillCheckActionTestBase() {
 
@@ -51,6 +53,50 @@ class HyperskillCheckCodeTaskTest : HyperskillCheckActionTestBase() {
     checkCheckAction(task, CheckStatus.Failed, "Failed")
   }
 
+  @Test
+  fun `test failed polls don't fail check via web socket`() {
+    val polls = AtomicInteger()
+    mockConnector.withResponseHandler(testRootDisposable) { request, _ ->
+      val path = request.pathWithoutPrams
+      if (path.startsWith("/api/submissions/")) {
+        polls.incrementAndGet()
+        return@withResponseHandler MockResponseFactory.fromString("{}", HTTP_INTERNAL_ERROR)
+      }
+      MockResponseFactory.fromString(
+        when (path) {
+          "/api/ws" -> webSocketConfiguration
+          "/api/attempts" -> attempt
+          "/api/submissions" -> submission
+          else -> "{}"
+        }
+      )
+    }
+
+    var state: MockWebSocketState = MockWebSocketState.INITIAL
+
+    mockConnector.withWebSocketListener(object : WebSocketListener() {
+      override fun onMessage(webSocket: WebSocket, text: String) {
+        when (state) {
+          MockWebSocketState.INITIAL -> {
+            webSocket.confirmConnection()
+            state = MockWebSocketState.CONNECTION_CONFIRMED
+          }
+
+          MockWebSocketState.CONNECTION_CONFIRMED -> {
+            webSocket.confirmSubscription()
+            // the submission is polled while the result is being evaluated
+            Thread.sleep(2000)
+            webSocket.send(submissionResult)
+          }
+        }
+      }
+    })
+
+    val task = findTask(0, 0)
+    checkCheckAction(task, CheckStatus.Failed, "Failed")
+    assertTrue("The submission must be polled while the web socket is listened to", polls.get() > 0)
+  }
+
   @Test
   fun `test submission made, result not received via web socket`() {
     configureResponses()
@@ -0,0 +1,116 @@
+package org.hyperskill.academy.learning.stepik.hyperskill.checker
+
+import org.hyperskill.academy.learning.Err
+import org.hyperskill.academy.learning.Ok
+import org.hyperskill.academy.learning.Result
+import org.hyperskill.academy.learning.stepik.api.StepikBasedSubmission
+import org.hyperskill.academy.learning.stepik.hyperskill.checker.HyperskillCheckConnector.EVALUATION_STATUS
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class SubmissionResultPollerTest {
+  private val scheduler = Executors.newSingleThreadScheduledExecutor()
+  private val polls = AtomicInteger()
+  private val delays = ConcurrentLinkedQueue<Long>()
+
+  @After
+  fun tearDown() {
+    scheduler.shutdownNow()
+  }
+
+  @Test
+  fun `test polling stops at final status`() {
+    val poller = createPoller { if (polls.incrementAndGet() < 4) Ok(submission(EVALUATION_STATUS)) else Ok(submission("wrong")) }
+    poller.start(submission(EVALUATION_STATUS))
+
+    assertEquals("wrong", poller.awaitResult().status)
+    assertEquals(4, polls.get())
+    assertEquals(listOf(10L, 20L, 40L, 40L), delays.toList())
+  }
+
+  @Test
+  fun `test last submission is returned after timeout`() {
+    val poller = createPoller(timeoutMillis = 100) {
+      polls.incrementAndGet()
+      Ok(submission(EVALUATION_STATUS))
+    }
+    poller.start(submission(EVALUATION_STATUS))
+
+    assertEquals(EVALUATION_STATUS, poller.awaitResult().status)
+    assertTrue(polls.get() > 0)
+  }
+
+  @Test
+  fun `test poll error stops polling`() {
+    val poller = createPoller {
+      polls.incrementAndGet()
+      Err("Access denied")
+    }
+    poller.start(submission(EVALUATION_STATUS))
+
+    assertEquals("Access denied", (poller.result.get(5, TimeUnit.SECONDS) as Err).error)
+    assertEquals(1, polls.get())
+  }
+
+  @Test
+  fun `test poll errors are retried while tolerated`() {
+    val poller = createPoller {
+      if (polls.incrementAndGet() < 3) Err("Internal server error") else Ok(submission("wrong"))
+    }
+    poller.toleratesPollErrors = true
+    poller.start(submission(EVALUATION_STATUS))
+
+    assertEquals("wrong", poller.awaitResult().status)
+    assertEquals(3, polls.get())
+  }
+
+  @Test
+  fun `test evaluated submission is not polled`() {
+    val poller = createPoller { Ok(submission(EVALUATION_STATUS).also { polls.incrementAndGet() }) }
+    poller.start(submission("correct"))
+
+    assertEquals("correct", poller.awaitResult().status)
+    assertEquals(0, polls.get())
+  }
+
+  @Test
+  fun `test cancelled polling is stopped`() {
+    val poller = createPoller { Ok(submission(EVALUATION_STATUS).also { polls.incrementAndGet() }) }
+    poller.start(submission(EVALUATION_STATUS))
+    poller.cancel()
+
+    Thread.sleep(100)
+    assertTrue(poller.result.isCancelled)
+    assertEquals(0, polls.get())
+  }
+
+  private fun createPoller(
+    timeoutMillis: Long = 5000,
+    getSubmission: (Int) -> Result<StepikBasedSubmission, String>
+  ): SubmissionResultPoller = SubmissionResultPoller(
+    getSubmission,
+    timeoutMillis,
+    scheduler,
+    initialDelayMillis = 10,
+    maxDelayMillis = 40,
+    jitter = { delay -> delay.also { delays += it } }
+  )
+
+  private fun SubmissionResultPoller.awaitResult(): StepikBasedSubmission =
+    (result.get(5, TimeUnit.SECONDS) as Ok).value
+
+  private fun submission(status: String): StepikBasedSubmission = StepikBasedSubmission().apply {
+    id = SUBMISSION_ID
+    this.status = status
+  }
+
+  companion object {
+    private const val SUBMISSION_ID = 7565000
+  }
+}
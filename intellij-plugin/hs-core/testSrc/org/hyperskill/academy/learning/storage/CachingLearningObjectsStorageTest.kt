@@ -0,0 +1,144 @@
+package org.hyperskill.academy.learning.storage
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class CachingLearningObjectsStorageTest {
+
+  @Test
+  fun `test repeated loads are served from cache`() {
+    val storage = CachingLearningObjectsStorage(InMemoryLearningObjectsStorage(), 1024)
+    storage.store("a.txt", "text")
+
+    assertEquals("text", storage.loadText("a.txt"))
+    assertEquals("text", storage.loadText("a.txt"))
+    assertEquals("text", String(storage.load("a.txt")))
+
+    assertEquals(1, storage.misses)
+    assertEquals(2, storage.hits)
+  }
+
+  @Test
+  fun `test store invalidates cached value`() {
+    val storage = CachingLearningObjectsStorage(InMemoryLearningObjectsStorage(), 1024)
+    storage.store("a.txt", "old")
+    assertEquals("old", storage.loadText("a.txt"))
+
+    storage.store("a.txt", "new")
+    assertEquals("new", storage.loadText("a.txt"))
+
+    storage.storeAll(mapOf("a.txt" to "newest".toByteArray()))
+    assertEquals("newest", storage.loadText("a.txt"))
+    assertEquals(3, storage.misses)
+  }
+
+  @Test
+  fun `test least recently used values are evicted`() {
+    val storage = CachingLearningObjectsStorage(InMemoryLearningObjectsStorage(), 250)
+    storage.store("a", ByteArray(100))
+    storage.store("b", ByteArray(100))
+    storage.store("c", ByteArray(100))
+
+    storage.load("a")
+    storage.load("b")
+    storage.load("a")
+    storage.load("c") // evicts "b"
+    assertEquals(200, storage.weight)
+
+    storage.load("a")
+    storage.load("b")
+    assertEquals(4, storage.misses)
+    assertEquals(2, storage.hits)
+  }
+
+  @Test
+  fun `test values loaded by prefix are cached`() {
+    val storage = CachingLearningObjectsStorage(InMemoryLearningObjectsStorage(), 1024)
+    storage.store("task1/a.txt", "a")
+    storage.store("task1/b.txt", "b")
+    storage.store("task2/a.txt", "c")
+
+    assertEquals(setOf("task1/a.txt", "task1/b.txt"), storage.loadAll("task1/").keys)
+    assertEquals("a", storage.loadText("task1/a.txt"))
+    assertEquals("b", storage.loadText("task1/b.txt"))
+    assertEquals(0, storage.misses)
+  }
+
+  @Test
+  fun `test cached values can't be modified by callers`() {
+    val storage = CachingLearningObjectsStorage(InMemoryLearningObjectsStorage(), 1024)
+    storage.store("a.txt", "text")
+    storage.store("b.txt", "text")
+
+    storage.load("a.txt").fill(0)
+    storage.loadAll("b.txt").getValue("b.txt").fill(0)
+
+    assertEquals("text", String(storage.load("a.txt")))
+    assertEquals("text", String(storage.load("b.txt")))
+  }
+
+  @Test
+  fun `test store of another key doesn't prevent caching of loaded value`() {
+    val loadStarted = CountDownLatch(1)
+    val storeFinished = CountDownLatch(1)
+    val delegate = object : InMemoryLearningObjectsStorage() {
+      override fun load(key: String): ByteArray {
+        if (key == "a.txt") {
+          loadStarted.countDown()
+          storeFinished.await(10, TimeUnit.SECONDS)
+        }
+        return super.load(key)
+      }
+    }
+    val storage = CachingLearningObjectsStorage(delegate, 1024)
+    storage.store("a.txt", "a")
+
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val load = executor.submit<String> { storage.loadText("a.txt") }
+      loadStarted.await(10, TimeUnit.SECONDS)
+      storage.store("b.txt", "b")
+      storeFinished.countDown()
+      assertEquals("a", load.get(10, TimeUnit.SECONDS))
+    }
+    finally {
+      executor.shutdownNow()
+    }
+
+    assertEquals("a", storage.loadText("a.txt"))
+    assertEquals(1, storage.misses)
+  }
+
+  @Test
+  fun `test value stored during load is not cached`() {
+    val loadStarted = CountDownLatch(1)
+    val storeFinished = CountDownLatch(1)
+    val delegate = object : InMemoryLearningObjectsStorage() {
+      override fun load(key: String): ByteArray {
+        val value = super.load(key)
+        loadStarted.countDown()
+        storeFinished.await(10, TimeUnit.SECONDS)
+        return value
+      }
+    }
+    val storage = CachingLearningObjectsStorage(delegate, 1024)
+    storage.store("a.txt", "old")
+
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val load = executor.submit<String> { storage.loadText("a.txt") }
+      loadStarted.await(10, TimeUnit.SECONDS)
+      storage.store("a.txt", "new")
+      storeFinished.countDown()
+      assertEquals("old", load.get(10, TimeUnit.SECONDS))
+    }
+    finally {
+      executor.shutdownNow()
+    }
+
+    assertEquals("new", storage.loadText("a.txt"))
+  }
+}
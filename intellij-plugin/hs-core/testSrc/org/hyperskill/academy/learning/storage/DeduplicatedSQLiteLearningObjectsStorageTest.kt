@@ -0,0 +1,76 @@
+package org.hyperskill.academy.learning.storage
+
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.util.io.FileUtil
+import org.hyperskill.academy.learning.EduTestCase
+import org.jetbrains.sqlite.SqliteConnection
+import org.junit.Test
+import java.nio.file.Path
+
+class DeduplicatedSQLiteLearningObjectsStorageTest : EduTestCase() {
+
+  @Test
+  fun `test stored values are loaded by key`() {
+    val storage = createStorage()
+    storage.store("stage1/task/src/Main.kt", "fun main() {}")
+    storage.store("stage1/task/build.gradle", "apply plugin: 'kotlin'")
+
+    assertEquals("fun main() {}", String(storage.load("stage1/task/src/Main.kt")))
+    assertEquals("apply plugin: 'kotlin'", String(storage.load("stage1/task/build.gradle")))
+    assertEquals(0, storage.load("unknown").size)
+  }
+
+  @Test
+  fun `test identical contents are stored once`() {
+    val dbPath = FileUtil.createTempDirectory("learning-objects", null).toPath().resolve("db")
+    val storage = DeduplicatedSQLiteLearningObjectsStorage.openOrCreateDB(dbPath)
+
+    for (stage in 1..30) {
+      storage.store("stage$stage/task/src/Main.kt", "fun main() {}")
+    }
+    storage.store("stage1/task/src/Main.kt", "fun main() { println() }")
+    Disposer.dispose(storage)
+
+    assertEquals(2, countRows(dbPath, "Blobs"))
+    assertEquals(30, countRows(dbPath, "Paths"))
+  }
+
+  @Test
+  fun `test replaced contents are removed when unused`() {
+    val dbPath = FileUtil.createTempDirectory("learning-objects", null).toPath().resolve("db")
+    val storage = DeduplicatedSQLiteLearningObjectsStorage.openOrCreateDB(dbPath)
+
+    storage.store("a.txt", "first")
+    storage.store("a.txt", "second")
+    assertEquals("second", String(storage.load("a.txt")))
+    Disposer.dispose(storage)
+
+    assertEquals(1, countRows(dbPath, "Blobs"))
+  }
+
+  @Test
+  fun `test values are loaded by prefix`() {
+    val storage = createStorage()
+    storage.store("lesson/stage1/src/Main.kt", "stage 1")
+    storage.store("lesson/stage1/build.gradle", "build")
+    storage.store("lesson/stage10/src/Main.kt", "stage 10")
+    storage.store("lesson/stage2/src/Main.kt", "stage 2")
+
+    val values = storage.loadAll("lesson/stage1/").mapValues { String(it.value) }
+
+    assertEquals(mapOf("lesson/stage1/src/Main.kt" to "stage 1", "lesson/stage1/build.gradle" to "build"), values)
+  }
+
+  private fun createStorage(): LearningObjectsStorage {
+    val dbPath = FileUtil.createTempDirectory("learning-objects", null).toPath().resolve("db")
+    val storage = DeduplicatedSQLiteLearningObjectsStorage.openOrCreateDB(dbPath)
+    Disposer.register(testRootDisposable, storage)
+    return storage
+  }
+
+  private fun countRows(dbPath: Path, table: String): Int {
+    return SqliteConnection(dbPath).use { connection ->
+      connection.selectInt("SELECT COUNT(*) FROM `$table`")
+    }
+  }
+}
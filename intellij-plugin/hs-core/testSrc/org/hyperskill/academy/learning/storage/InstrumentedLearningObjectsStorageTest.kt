@@ -0,0 +1,20 @@
+package org.hyperskill.academy.learning.storage
+
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class InstrumentedLearningObjectsStorageTest {
+
+  @Test
+  fun `test loaded text volume is its encoded size`() {
+    val metrics = LearningObjectsStorageMetrics()
+    val storage = InstrumentedLearningObjectsStorage(InMemoryLearningObjectsStorage(), LearningObjectStorageType.InMemory, metrics)
+    storage.store("a.txt", "привет")
+    metrics.reset()
+
+    storage.loadText("a.txt")
+
+    val dump = metrics.dump()
+    assertTrue(dump, "LOAD: count=1 bytes=12 " in dump)
+  }
+}
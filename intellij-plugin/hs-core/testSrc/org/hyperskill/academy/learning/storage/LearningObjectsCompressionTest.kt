@@ -0,0 +1,38 @@
+package org.hyperskill.academy.learning.storage
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class LearningObjectsCompressionTest {
+
+  @Test
+  fun `test small values are stored raw`() {
+    val value = "fun main() {}".toByteArray()
+    val encoded = encodeLearningObject(value)
+
+    assertEquals(LearningObjectsCodec.RAW, encoded.codec)
+    assertArrayEquals(value, decodeLearningObject(encoded.codec.id, encoded.bytes))
+  }
+
+  @Test
+  fun `test large values are compressed`() {
+    val value = "println(\"Hello, World!\")\n".repeat(1000).toByteArray()
+    val encoded = encodeLearningObject(value)
+
+    assertEquals(LearningObjectsCodec.DEFLATE, encoded.codec)
+    assertTrue(encoded.bytes.size < value.size)
+    assertArrayEquals(value, decodeLearningObject(encoded.codec.id, encoded.bytes))
+  }
+
+  @Test
+  fun `test incompressible values are stored raw`() {
+    val value = Random(42).nextBytes(10_000)
+    val encoded = encodeLearningObject(value)
+
+    assertEquals(LearningObjectsCodec.RAW, encoded.codec)
+    assertArrayEquals(value, decodeLearningObject(encoded.codec.id, encoded.bytes))
+  }
+}
@@ -0,0 +1,157 @@
+package org.hyperskill.academy.learning.storage
+
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.util.Disposer
+import com.intellij.testFramework.LoggedErrorProcessor
+import org.hyperskill.academy.learning.EduTestCase
+import org.hyperskill.academy.learning.course
+import org.hyperskill.academy.learning.courseFormat.InMemoryTextualContents
+import org.hyperskill.academy.learning.courseFormat.tasks.Task
+import org.junit.Test
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class LearningObjectsStorageManagerTest : EduTestCase() {
+
+  @Test
+  fun `test files are persisted in batches`() {
+    val task = createTask(filesCount = 450)
+    val storage = RecordingStorage()
+    val manager = createManager(storage)
+
+    manager.persistTaskEduFiles(task).get(10, TimeUnit.SECONDS)
+
+    assertEquals(listOf(200, 200, 50), storage.batchSizes)
+    for ((name, taskFile) in task.taskFiles) {
+      assertInstanceOf(taskFile.contents, ContentsFromLearningObjectsStorage::class.java)
+      assertEquals("text of $name", taskFile.contents.textualRepresentation)
+    }
+  }
+
+  @Test
+  fun `test persisted files are not persisted again`() {
+    val task = createTask(filesCount = 3)
+    val storage = RecordingStorage()
+    val manager = createManager(storage)
+
+    manager.persistTaskEduFiles(task).get(10, TimeUnit.SECONDS)
+    manager.persistTaskEduFiles(task).get(10, TimeUnit.SECONDS)
+
+    assertEquals(listOf(3), storage.batchSizes)
+  }
+
+  @Test
+  fun `test pending files are persisted before the storage is closed`() {
+    val task = createTask(filesCount = 3)
+    val storeStarted = CountDownLatch(1)
+    val storage = RecordingStorage(onStore = {
+      storeStarted.countDown()
+      Thread.sleep(500)
+    })
+    val manager = createManager(storage)
+
+    manager.persistTaskEduFiles(task)
+    assertTrue(storeStarted.await(10, TimeUnit.SECONDS))
+    Disposer.dispose(manager)
+
+    assertTrue("The storage must be closed", storage.isDisposed)
+    assertEquals(listOf(3), storage.batchSizesBeforeDispose)
+  }
+
+  @Test
+  fun `test remaining batches are flushed when the storage is closed in background`() {
+    val task = createTask(filesCount = 450)
+    val storeStarted = CountDownLatch(1)
+    val storage = RecordingStorage(onStore = {
+      storeStarted.countDown()
+      Thread.sleep(100)
+    })
+    val manager = createManager(storage)
+
+    manager.persistTaskEduFiles(task)
+    assertTrue(storeStarted.await(10, TimeUnit.SECONDS))
+    ApplicationManager.getApplication().executeOnPooledThread { Disposer.dispose(manager) }.get(10, TimeUnit.SECONDS)
+
+    assertEquals(listOf(50, 200, 200), storage.batchSizesBeforeDispose.sorted())
+  }
+
+  @Test
+  fun `test remaining batches are dropped when the storage is closed on EDT`() {
+    val task = createTask(filesCount = 450)
+    val storeStarted = CountDownLatch(1)
+    val storage = RecordingStorage(onStore = {
+      storeStarted.countDown()
+      Thread.sleep(500)
+    })
+    val manager = createManager(storage)
+
+    manager.persistTaskEduFiles(task)
+    assertTrue(storeStarted.await(10, TimeUnit.SECONDS))
+    Disposer.dispose(manager)
+
+    assertEquals("Only the batch being written must be waited for", listOf(200), storage.batchSizesBeforeDispose)
+    val notPersistedFile = task.taskFiles.values.last()
+    assertFalse(notPersistedFile.contents is ContentsFromLearningObjectsStorage)
+    assertEquals("text of ${notPersistedFile.name}", notPersistedFile.contents.textualRepresentation)
+  }
+
+  @Test
+  fun `test files keep their contents if they fail to persist`() {
+    val task = createTask(filesCount = 3)
+    val storage = RecordingStorage(onStore = { error("Storage is broken") })
+    val manager = createManager(storage)
+
+    val error = LoggedErrorProcessor.executeAndReturnLoggedError {
+      manager.persistTaskEduFiles(task).get(10, TimeUnit.SECONDS)
+    }
+
+    assertEquals("Storage is broken", error.message)
+    for ((name, taskFile) in task.taskFiles) {
+      assertFalse(taskFile.contents is ContentsFromLearningObjectsStorage)
+      assertEquals("text of $name", taskFile.contents.textualRepresentation)
+    }
+  }
+
+  private fun createManager(storage: LearningObjectsStorage): LearningObjectsStorageManager {
+    val manager = LearningObjectsStorageManager(project)
+    Disposer.register(testRootDisposable, manager)
+    manager.replaceStorage(storage)
+    return manager
+  }
+
+  private fun createTask(filesCount: Int): Task {
+    val course = course {
+      lesson("lesson") {
+        eduTask("task") {
+          for (i in 0 until filesCount) {
+            taskFile("file$i.txt", InMemoryTextualContents("text of file$i.txt"))
+          }
+        }
+      }
+    }
+    return course.lessons.single().taskList.single()
+  }
+
+  private class RecordingStorage(private val onStore: () -> Unit = {}) : InMemoryLearningObjectsStorage() {
+    val batchSizes: MutableList<Int> = CopyOnWriteArrayList()
+
+    @Volatile
+    var isDisposed: Boolean = false
+
+    @Volatile
+    var batchSizesBeforeDispose: List<Int> = emptyList()
+
+    override fun storeAll(values: Map<String, ByteArray>) {
+      onStore()
+      super.storeAll(values)
+      batchSizes += values.size
+    }
+
+    override fun dispose() {
+      batchSizesBeforeDispose = batchSizes.toList()
+      isDisposed = true
+      super.dispose()
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package org.hyperskill.academy.learning.storage
+
+import com.intellij.openapi.progress.EmptyProgressIndicator
+import org.hyperskill.academy.learning.EduTestCase
+import org.junit.Test
+
+class LearningObjectsStorageMigrationTest : EduTestCase() {
+
+  override fun tearDown() {
+    try {
+      LearningObjectsStorageMigration.clearWatermark(project)
+    }
+    catch (e: Throwable) {
+      addSuppressedException(e)
+    }
+    finally {
+      super.tearDown()
+    }
+  }
+
+  @Test
+  fun `test all entries are copied`() {
+    val source = storageWith(KEYS.associateWith { "$it contents" })
+    val target = InMemoryLearningObjectsStorage()
+
+    migration(source, target).copyEntries(EmptyProgressIndicator())
+
+    for (key in KEYS) {
+      assertEquals("$key contents", String(target.load(key)))
+    }
+  }
+
+  @Test
+  fun `test resumed migration copies entries changed after they were copied`() {
+    val source = storageWith(KEYS.associateWith { "$it contents" })
+    val target = InMemoryLearningObjectsStorage()
+    migration(source, target).copyEntries(EmptyProgressIndicator())
+
+    // the interrupted migration knew about these changes only in memory
+    source.store("lesson/task1/src/Main.kt", "changed contents")
+    source.store("lesson/task2/src/Main.kt", "changed contents")
+
+    migration(source, target).copyEntries(EmptyProgressIndicator())
+
+    assertEquals("changed contents", String(target.load("lesson/task1/src/Main.kt")))
+    assertEquals("changed contents", String(target.load("lesson/task2/src/Main.kt")))
+    assertEquals("lesson/task3/src/Main.kt contents", String(target.load("lesson/task3/src/Main.kt")))
+  }
+
+  @Test
+  fun `test migration to another type starts from the beginning`() {
+    val source = storageWith(KEYS.associateWith { "$it contents" })
+    migration(source, InMemoryLearningObjectsStorage()).copyEntries(EmptyProgressIndicator())
+    assertEquals(LearningObjectStorageType.SQLite, LearningObjectsStorageMigration.interruptedMigrationType(project))
+
+    val target = InMemoryLearningObjectsStorage()
+    migration(source, target, LearningObjectStorageType.DeduplicatedSQLite).copyEntries(EmptyProgressIndicator())
+
+    for (key in KEYS) {
+      assertEquals("$key contents", String(target.load(key)))
+    }
+    assertEquals(LearningObjectStorageType.DeduplicatedSQLite, LearningObjectsStorageMigration.interruptedMigrationType(project))
+  }
+
+  @Test
+  fun `test cleared watermark means no interrupted migration`() {
+    migration(storageWith(mapOf("a.txt" to "a")), InMemoryLearningObjectsStorage()).copyEntries(EmptyProgressIndicator())
+    LearningObjectsStorageMigration.clearWatermark(project)
+
+    assertNull(LearningObjectsStorageMigration.interruptedMigrationType(project))
+  }
+
+  private fun migration(
+    source: LearningObjectsStorage,
+    target: LearningObjectsStorage,
+    targetType: LearningObjectStorageType = LearningObjectStorageType.SQLite
+  ): LearningObjectsStorageMigration =
+    LearningObjectsStorageMigration(project, source, target, targetType, KEYS)
+
+  private fun storageWith(values: Map<String, String>): LearningObjectsStorage {
+    val storage = InMemoryLearningObjectsStorage()
+    for ((key, value) in values) {
+      storage.store(key, value)
+    }
+    return storage
+  }
+
+  companion object {
+    private val KEYS = listOf("lesson/task1/src/Main.kt", "lesson/task2/src/Main.kt", "lesson/task3/src/Main.kt", "lesson/task1/build.gradle")
+  }
+}
@@ -0,0 +1,34 @@
+package org.hyperskill.academy.learning.storage
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class LearningObjectsStorageTest {
+
+  @Test
+  fun `test prefix upper bound`() {
+    assertEquals("task1/b", prefixUpperBound("task1/a"))
+    assertEquals("task10", prefixUpperBound("task1/"))
+  }
+
+  @Test
+  fun `test prefix upper bound carries over max char`() {
+    assertEquals("b", prefixUpperBound("a${Char.MAX_VALUE}${Char.MAX_VALUE}"))
+    assertNull(prefixUpperBound("${Char.MAX_VALUE}"))
+    assertNull(prefixUpperBound(""))
+  }
+
+  @Test
+  fun `test values with prefix ending with max char are loaded`() {
+    val storage = InMemoryLearningObjectsStorage()
+    storage.store("a${Char.MAX_VALUE}1", "1")
+    storage.store("a${Char.MAX_VALUE}${Char.MAX_VALUE}", "2")
+    storage.store("b", "3")
+    storage.store("${Char.MAX_VALUE}", "4")
+
+    assertEquals(setOf("a${Char.MAX_VALUE}1", "a${Char.MAX_VALUE}${Char.MAX_VALUE}"), storage.loadAll("a${Char.MAX_VALUE}").keys)
+    assertEquals(setOf("${Char.MAX_VALUE}"), storage.loadAll("${Char.MAX_VALUE}").keys)
+    assertEquals(4, storage.loadAll("").size)
+  }
+}